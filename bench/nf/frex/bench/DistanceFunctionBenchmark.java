@@ -0,0 +1,146 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.bench;
+
+import nf.frex.core.DistanceFunction;
+import nf.frex.core.OrbitFunction;
+import nf.frex.core.Registries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of {@link OrbitFunction#processOrbit} per distance function, in million orbit points
+ * per second. For comparison, "per point" sums the vicinities in a loop which calls the distance function
+ * for each point through a shared call site, as orbit functions did before distance functions got their own
+ * summation loops.
+ * <pre>
+ *     java -cp classes nf.frex.bench.DistanceFunctionBenchmark [-poly] [functionId ...]
+ * </pre>
+ * With {@code -poly}, all functions are run once before measuring, so that the JIT has seen many distance
+ * function types at every call site, as after switching functions in the app. Without it, run a single function
+ * per VM to measure the monomorphic case.
+ *
+ * @author Norman Fomferra
+ */
+public class DistanceFunctionBenchmark {
+    private static final int NUM_POINTS = 4096;
+    private static final long WARM_UP_MILLIS = 1000;
+    private static final long MEASURE_MILLIS = 2000;
+
+    public static void main(String[] args) {
+        boolean poly = false;
+        List<String> ids = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-poly")) {
+                poly = true;
+            } else {
+                ids.add(arg);
+            }
+        }
+        if (ids.isEmpty()) {
+            ids.addAll(Registries.distanceFunctions.getIdList());
+        }
+
+        final double[] orbitX = new double[NUM_POINTS];
+        final double[] orbitY = new double[NUM_POINTS];
+        computeOrbit(orbitX, orbitY);
+
+        if (poly) {
+            for (String id : Registries.distanceFunctions.getIdList()) {
+                final DistanceFunction f = Registries.distanceFunctions.getValue(id);
+                run(f, orbitX, orbitY, true, WARM_UP_MILLIS / 4);
+                run(f, orbitX, orbitY, false, WARM_UP_MILLIS / 4);
+            }
+        }
+
+        System.out.printf("%-18s %12s %16s%n", "function", "per point", "orbit function");
+        for (String id : ids) {
+            final DistanceFunction f = Registries.distanceFunctions.getValue(id);
+            if (f == null) {
+                throw new IllegalArgumentException("Unknown distance function " + id);
+            }
+            run(f, orbitX, orbitY, true, WARM_UP_MILLIS);
+            final double perPoint = run(f, orbitX, orbitY, true, MEASURE_MILLIS);
+            run(f, orbitX, orbitY, false, WARM_UP_MILLIS);
+            final double orbitFunction = run(f, orbitX, orbitY, false, MEASURE_MILLIS);
+            System.out.printf("%-18s %12.1f %16.1f%n", id, perPoint, orbitFunction);
+        }
+    }
+
+    /**
+     * @return Million points per second.
+     */
+    private static double run(DistanceFunction f, double[] orbitX, double[] orbitY, boolean perPoint, long millis) {
+        final OrbitFunction orbitFunction = new OrbitFunction(f, 0.2, 0.0, 0.0, false, 0.0, 1.0);
+        final long t0 = System.nanoTime();
+        final long tEnd = t0 + millis * 1000000L;
+        long numOrbits = 0;
+        double sum = 0.0;
+        long t;
+        do {
+            for (int i = 0; i < 16; i++) {
+                if (perPoint) {
+                    sum += sumPerPoint(f, 5.0, orbitX, orbitY);
+                } else {
+                    sum += orbitFunction.processOrbit(NUM_POINTS, orbitX, orbitY);
+                }
+            }
+            numOrbits += 16;
+            t = System.nanoTime();
+        } while (t < tEnd);
+        if (sum == 42.0) {
+            // Keeps the JIT from eliminating the loop
+            System.out.println();
+        }
+        return numOrbits * NUM_POINTS * 1000.0 / (t - t0);
+    }
+
+    private static double sumPerPoint(DistanceFunction f, double scale, double[] orbitX, double[] orbitY) {
+        double sum = 0.0;
+        double distance;
+        for (int i = 0; i < orbitX.length; i++) {
+            distance = scale * f.evaluate(orbitX[i], orbitY[i]);
+            sum += 1.0 / (1.0 + distance * distance);
+        }
+        return sum;
+    }
+
+    /**
+     * Fills the arrays with a bounded Mandelbrot orbit, so that points are spread like those of real orbits.
+     */
+    private static void computeOrbit(double[] orbitX, double[] orbitY) {
+        final double cx = -0.7436;
+        final double cy = 0.1318;
+        double x = 0.0;
+        double y = 0.0;
+        for (int i = 0; i < orbitX.length; i++) {
+            final double xt = x * x - y * y + cx;
+            y = 2.0 * x * y + cy;
+            x = xt;
+            if (x * x + y * y > 4.0) {
+                x = 0.0;
+                y = 0.0;
+            }
+            orbitX[i] = x;
+            orbitY[i] = y;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.bench;
+
+import nf.frex.core.Generator;
+import nf.frex.core.GeneratorConfig;
+import nf.frex.core.Image;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Measures the latency from {@link Generator#start} to the first computed tile, as seen when panning or zooming.
+ * "reused" starts all runs on one generator, whose worker threads stay alive between runs. "fresh" creates a new
+ * generator for each run, so that every run starts new threads, as all runs did before generators kept a pool.
+ * <pre>
+ *     java -cp classes nf.frex.bench.GeneratorLatencyBenchmark [-w width] [-h height] [-t tasks] [-n runs]
+ * </pre>
+ * The default Mandelbrot set is rendered progressively, with all pixels missing at the start of each run.
+ *
+ * @author Norman Fomferra
+ */
+public class GeneratorLatencyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int width = 800;
+        int height = 480;
+        int numTasks = Runtime.getRuntime().availableProcessors();
+        int numRuns = 200;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-w")) {
+                width = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-h")) {
+                height = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t")) {
+                numTasks = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-n")) {
+                numRuns = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        final GeneratorConfig config = new GeneratorConfig();
+        config.setDefaults();
+        config.setProgressive(true);
+        final Image image = new Image(width, height);
+
+        // Warm up the JIT for both cases
+        run(config, image, numTasks, numRuns / 4, true);
+        run(config, image, numTasks, numRuns / 4, false);
+
+        System.out.printf("%dx%d, %d task(s), %d run(s), median / 90th percentile in ms%n",
+                          width, height, numTasks, numRuns);
+        System.out.printf("%-8s %20s %20s%n", "", "first tile", "complete");
+        print("reused", run(config, image, numTasks, numRuns, true));
+        print("fresh", run(config, image, numTasks, numRuns, false));
+    }
+
+    /**
+     * @return Per run, the nanoseconds until the first tile and until the run stopped.
+     */
+    private static long[][] run(GeneratorConfig config, Image image, int numTasks, int numRuns, boolean reuse)
+            throws InterruptedException {
+        final Probe probe = new Probe();
+        final long[][] times = new long[2][numRuns];
+        Generator generator = reuse ? new Generator(config, numTasks, probe) : null;
+        try {
+            for (int i = 0; i < numRuns; i++) {
+                Arrays.fill(image.getValues(), Image.MISSING_VALUE);
+                if (!reuse) {
+                    generator = new Generator(config, numTasks, probe);
+                }
+                probe.firstTileTime = 0L;
+                final long t0 = System.nanoTime();
+                generator.start(image, false);
+                probe.stopped.acquire();
+                times[0][i] = probe.firstTileTime - t0;
+                times[1][i] = probe.stopTime - t0;
+                if (!reuse) {
+                    generator.shutdown();
+                }
+            }
+        } finally {
+            generator.shutdown();
+        }
+        return times;
+    }
+
+    private static void print(String name, long[][] times) {
+        System.out.printf("%-8s %20s %20s%n", name, format(times[0]), format(times[1]));
+    }
+
+    private static String format(long[] times) {
+        final long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return String.format("%.2f / %.2f", sorted[sorted.length / 2] / 1.0e6, sorted[sorted.length * 9 / 10] / 1.0e6);
+    }
+
+    private static class Probe implements Generator.ProgressListener {
+        final Semaphore stopped = new Semaphore(0);
+        volatile long firstTileTime;
+        volatile long stopTime;
+
+        @Override
+        public void onStarted(int numTasks) {
+        }
+
+        @Override
+        public void onSomeLinesComputed(int taskId, int line1, int line2) {
+            if (firstTileTime == 0L) {
+                firstTileTime = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void onStopped(boolean cancelled) {
+            stopTime = System.nanoTime();
+            stopped.release();
+        }
+    }
+}
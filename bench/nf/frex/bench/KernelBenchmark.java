@@ -0,0 +1,106 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.bench;
+
+import nf.frex.core.Fractal;
+import nf.frex.core.Region;
+import nf.frex.core.Registries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of the double precision kernels of each fractal, in million iterations per second:
+ * {@link Fractal#computeOrbit(double, double, double, double, int, double, double[], double[])}, which records
+ * the orbit, and {@link Fractal#computeIterations(double, double, double, double, int, double)}, which only
+ * counts iterations.
+ * <pre>
+ *     java -cp classes nf.frex.bench.KernelBenchmark [-i iterMax] [fractalId ...]
+ * </pre>
+ * The kernels are run on a grid of 64 x 64 points over each fractal's default region, with one thread.
+ *
+ * @author Norman Fomferra
+ */
+public class KernelBenchmark {
+    private static final int GRID_SIZE = 64;
+    private static final long WARM_UP_MILLIS = 1000;
+    private static final long MEASURE_MILLIS = 2000;
+
+    public static void main(String[] args) {
+        int iterMax = 5000;
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-i")) {
+                iterMax = Integer.parseInt(args[++i]);
+            } else {
+                ids.add(args[i]);
+            }
+        }
+        if (ids.isEmpty()) {
+            ids.addAll(Registries.fractals.getIdList());
+        }
+
+        System.out.printf("iterMax = %d%n", iterMax);
+        System.out.printf("%-18s %14s %18s%n", "fractal", "computeOrbit", "computeIterations");
+        for (String id : ids) {
+            final Fractal fractal = Registries.fractals.getValue(id);
+            if (fractal == null) {
+                throw new IllegalArgumentException("Unknown fractal " + id);
+            }
+            run(fractal, iterMax, true, WARM_UP_MILLIS);
+            final double orbit = run(fractal, iterMax, true, MEASURE_MILLIS);
+            run(fractal, iterMax, false, WARM_UP_MILLIS);
+            final double iterations = run(fractal, iterMax, false, MEASURE_MILLIS);
+            System.out.printf("%-18s %14.1f %18.1f%n", id, orbit, iterations);
+        }
+    }
+
+    /**
+     * @return Million iterations per second.
+     */
+    private static double run(Fractal fractal, int iterMax, boolean recordOrbit, long millis) {
+        final Region region = fractal.getDefaultRegion();
+        final double bailOut = fractal.getDefaultBailOut();
+        final double ps = region.getPixelSize(GRID_SIZE, GRID_SIZE);
+        final double x0 = region.getUpperLeftX(GRID_SIZE, ps);
+        final double y0 = region.getUpperLeftY(GRID_SIZE, ps);
+        final double[] orbitX = new double[iterMax];
+        final double[] orbitY = new double[iterMax];
+        final long t0 = System.nanoTime();
+        final long tEnd = t0 + millis * 1000000L;
+        long numIterations = 0;
+        long t;
+        do {
+            for (int iy = 0; iy < GRID_SIZE; iy++) {
+                for (int ix = 0; ix < GRID_SIZE; ix++) {
+                    final double x = x0 + ix * ps;
+                    final double y = y0 - iy * ps;
+                    if (recordOrbit) {
+                        numIterations += fractal.computeOrbit(0.0, 0.0, x, y, iterMax, bailOut, orbitX, orbitY);
+                    } else {
+                        numIterations += fractal.computeIterations(0.0, 0.0, x, y, iterMax, bailOut);
+                    }
+                }
+            }
+            t = System.nanoTime();
+        } while (t < tEnd);
+        return numIterations * 1000.0 / (t - t0);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.android;
+
+import android.graphics.Bitmap;
+import nf.frex.core.ColorQuantizer;
+import nf.frex.core.ColorScheme;
+import nf.frex.core.Image;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Converts between Android bitmaps and the platform-independent images and colours of {@code nf.frex.core}.
+ *
+ * @author Norman Fomferra
+ */
+public final class Bitmaps {
+
+    private static final Map<ColorScheme, Bitmap> gradientIcons = new WeakHashMap<ColorScheme, Bitmap>();
+
+    private Bitmaps() {
+    }
+
+    public static Bitmap createBitmap(Image image) {
+        Bitmap bitmap = Bitmap.createBitmap(image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888);
+        getPixels(image, bitmap);
+        return bitmap;
+    }
+
+    public static void getPixels(Image image, Bitmap bitmap) {
+        bitmap.setPixels(image.getColours(), 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    public static synchronized Bitmap getGradientIcon(ColorScheme colorScheme) {
+        Bitmap icon = gradientIcons.get(colorScheme);
+        if (icon == null) {
+            int width = 256;
+            int height = 48;
+            int[] colors = new int[width * height];
+            int[] palette = colorScheme.getGradient(width);
+            for (int j = 0; j < height; j++) {
+                System.arraycopy(palette, 0, colors, j * width, width);
+            }
+            icon = Bitmap.createBitmap(colors, width, height, Bitmap.Config.ARGB_8888);
+            gradientIcons.put(colorScheme, icon);
+        }
+        return icon;
+    }
+
+    public static ColorScheme quantize(ColorQuantizer colorQuantizer, Bitmap bitmap, ColorQuantizer.ProgressListener progressListener) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return colorQuantizer.quantize(pixels, progressListener);
+    }
+}
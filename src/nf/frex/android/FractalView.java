@@ -33,6 +33,8 @@ import android.view.ScaleGestureDetector;
 import android.view.View;
 import nf.frex.core.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
 
@@ -42,7 +44,7 @@ import java.util.LinkedList;
 public class FractalView extends View {
     public static final String TAG = "FrexActivity";
     public static final String PACKAGE_NAME = "nf.frex.android";
-    public static final float MISSING_VALUE = -1.0f;
+    public static final float MISSING_VALUE = Image.MISSING_VALUE;
     private final Matrix matrix;
 
     private enum Operation {
@@ -85,31 +87,13 @@ public class FractalView extends View {
 
         generatorConfig = new GeneratorConfig();
 
-        generatorConfig.setFractalId("MANDELBROT");
-        Fractal fractal = getFractal();
-        generatorConfig.setRegion(fractal.getDefaultRegion().clone());
-        generatorConfig.setIterMax(fractal.getDefaultIterMax());
-        generatorConfig.setBailOut(fractal.getDefaultBailOut());
-        generatorConfig.setJuliaModeFractal(false);
-        generatorConfig.setJuliaX(0.0);
-        generatorConfig.setJuliaY(0.0);
-
-        generatorConfig.setDecoratedFractal(false);
-        generatorConfig.setDistanceFunctionId("STINGS");
-        generatorConfig.setDistanceDilation(0.2);
-        generatorConfig.setDistanceTranslateX(0.0);
-        generatorConfig.setDistanceTranslateY(0.0);
-        generatorConfig.setTurbulenceEnabled(false);
-        generatorConfig.setTurbulenceIntensity(2.0);
-        generatorConfig.setTurbulenceScale(1.0);
-
-        generatorConfig.setColorSchemeId("SUNSET");
-        generatorConfig.setColorScheme(Registries.colorSchemes.getValue(generatorConfig.getColorSchemeId()));
-        generatorConfig.setColorGain(1.0 / fractal.getDefaultIterMax());
-        generatorConfig.setColorOffset(0.0);
-        generatorConfig.setColorRepeat(true);
+        generatorConfig.setDefaults();
 
         generatorConfig.setConfigName(generatorConfig.getFractalId().toLowerCase());
+        generatorConfig.setRectangleChecking(SettingsActivity.isRectangleChecking(getContext()));
+        generatorConfig.setPeriodicityChecking(SettingsActivity.isPeriodicityChecking(getContext()));
+        generatorConfig.setSeriesApproximation(SettingsActivity.isSeriesApproximation(getContext()));
+        generatorConfig.setProgressive(SettingsActivity.isProgressiveRendering(getContext()));
 
         regionHistory.add(generatorConfig.getRegion().clone());
 
@@ -145,8 +129,16 @@ public class FractalView extends View {
         this.generatorConfig.setFractalId(fractalId);
     }
 
+    public String getFractalFormula() {
+        return generatorConfig.getFractalFormula();
+    }
+
+    public void setFractalFormula(String fractalFormula) throws IllegalArgumentException {
+        this.generatorConfig.setFractalFormula(fractalFormula);
+    }
+
     public Fractal getFractal() {
-        return Registries.fractals.getValue(getFractalId());
+        return generatorConfig.getFractal();
     }
 
     public String getColorSchemeId() {
@@ -233,6 +225,14 @@ public class FractalView extends View {
         this.generatorConfig.setColorRepeat(colorRepeat);
     }
 
+    public boolean isColorHistogram() {
+        return generatorConfig.isColorHistogram();
+    }
+
+    public void setColorHistogram(boolean colorHistogram) {
+        this.generatorConfig.setColorHistogram(colorHistogram);
+    }
+
     public boolean isDecoratedFractal() {
         return generatorConfig.isDecoratedFractal();
     }
@@ -256,6 +256,14 @@ public class FractalView extends View {
         }
     }
 
+    public boolean isSmoothIterations() {
+        return generatorConfig.isSmoothIterations();
+    }
+
+    public void setSmoothIterations(boolean smoothIterations) {
+        generatorConfig.setSmoothIterations(smoothIterations);
+    }
+
     public boolean isJuliaModeFractal() {
         return generatorConfig.isJuliaModeFractal();
     }
@@ -312,9 +320,9 @@ public class FractalView extends View {
 
     public Bitmap captureBitmap() {
         if (capturedBitmap == null) {
-            capturedBitmap = image.createBitmap();
+            capturedBitmap = Bitmaps.createBitmap(image);
         } else {
-            image.getPixels(capturedBitmap);
+            Bitmaps.getPixels(image, capturedBitmap);
         }
         return capturedBitmap;
     }
@@ -342,6 +350,62 @@ public class FractalView extends View {
         generator.start(image, false);
     }
 
+    /**
+     * Restores values saved by {@link ValueRaster}, if they match the current configuration and view size,
+     * and recomputes the colours only. The file is read and the current run is stopped by a background thread,
+     * then the values are put into the image by the UI thread. Until then, the values are computed as usual.
+     * Errors are ignored, since the values are computed anyway.
+     *
+     * @param valuesFile The values file
+     */
+    public void restoreValues(final File valuesFile) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final long configHash = ValueRaster.getConfigHash(generatorConfig);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final float[] values;
+                try {
+                    values = ValueRaster.read(valuesFile, width, height, configHash);
+                    if (values == null) {
+                        return;
+                    }
+                    generator.cancelAndWait();
+                } catch (IOException e) {
+                    Log.w(TAG, e);
+                    return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        setValues(values, width, height, configHash);
+                    }
+                });
+            }
+        }).start();
+    }
+
+    /**
+     * Puts restored values into the image, unless a new run has been started or the view has changed meanwhile.
+     */
+    private void setValues(float[] values, int width, int height, long configHash) {
+        if (!generator.isStopped()) {
+            return;
+        }
+        if (image.getWidth() == width && image.getHeight() == height
+                && ValueRaster.getConfigHash(generatorConfig) == configHash) {
+            generator.setValues(image, values);
+            Arrays.fill(imageCopy.getValues(), MISSING_VALUE);
+            generator.start(image, true);
+        } else {
+            // Continue the run cancelled for the restore
+            generator.start(image, false);
+        }
+    }
+
     public void recomputeColors() {
         generator.cancel();
         generator.start(image, true);
@@ -421,13 +485,12 @@ public class FractalView extends View {
         int w = image.getWidth();
         int h = image.getHeight();
         double s = generatorConfig.getRegion().getPixelSize(w, h);
-        double cx0 = generatorConfig.getRegion().getUpperLeftX(w, s);
-        double cy0 = generatorConfig.getRegion().getUpperLeftY(h, s);
-        double cx = cx0 + s * viewX;
-        double cy = cy0 - s * viewY;
+        double dx = s * (viewX - 0.5 * w);
+        double dy = -s * (viewY - 0.5 * h);
         double r = (1.0 / zoomFactor) * generatorConfig.getRegion().getRadius();
 
-        regenerateRegion(cx, cy, r);
+        // The view point becomes the new center
+        moveRegion(dx, dy, r, 0.5F * w, 0.5F * h);
     }
 
     /**
@@ -445,31 +508,40 @@ public class FractalView extends View {
         double s1 = generatorConfig.getRegion().getPixelSize(w, h);
         double r = (1.0 / zoomFactor) * generatorConfig.getRegion().getRadius();
         double s2 = Region.getPixelSize(r, w, h);
-        double cx = generatorConfig.getRegion().getCenterX() + (s1 - s2) * (invariantViewX - w / 2);
-        double cy = generatorConfig.getRegion().getCenterY() - (s1 - s2) * (invariantViewY - h / 2);
+        double dx = (s1 - s2) * (invariantViewX - w / 2);
+        double dy = -(s1 - s2) * (invariantViewY - h / 2);
 
-        regenerateRegion(cx, cy, r);
+        moveRegion(dx, dy, r, invariantViewX, invariantViewY);
     }
 
 
     public void regenerateRegion(Region region) {
-        regenerateRegion(region.getCenterX(), region.getCenterY(), region.getRadius());
+        Region lastRegion = generatorConfig.getRegion().clone();
+        recordLastRegion();
+        generatorConfig.getRegion().set(region);
+        regenerate(lastRegion, 0.5F * image.getWidth(), 0.5F * image.getHeight());
     }
 
-    private void regenerateRegion(double cx, double cy, double r) {
+    /**
+     * Moves the region's center by the given Z-plane offsets. Offsets are used rather than absolute
+     * coordinates so that the center of deeply zoomed regions keeps its full precision.
+     * The area around the given view point is computed first.
+     */
+    private void moveRegion(double dx, double dy, double r, float focusViewX, float focusViewY) {
         Region lastRegion = generatorConfig.getRegion().clone();
-
         recordLastRegion();
+        generatorConfig.getRegion().move(dx, dy, r);
+        regenerate(lastRegion, focusViewX, focusViewY);
+    }
 
-        generatorConfig.getRegion().set(cx, cy, r);
-
+    private void regenerate(Region lastRegion, float focusViewX, float focusViewY) {
         recycle(image, imageCopy, lastRegion, generatorConfig.getRegion());
 
         Image imageTemp = image;
         this.image = imageCopy;
         this.imageCopy = imageTemp;
 
-        generator.start(image, false);
+        generator.start(image, false, (int) focusViewX, (int) focusViewY);
     }
 
     private void moveRegion(float viewDistanceX, float viewDistanceY) {
@@ -478,11 +550,11 @@ public class FractalView extends View {
         recordLastRegion();
 
         double s = generatorConfig.getRegion().getPixelSize(image.getWidth(), image.getHeight());
-        double cx = generatorConfig.getRegion().getCenterX() + s * (int) viewDistanceX;
-        double cy = generatorConfig.getRegion().getCenterY() - s * (int) viewDistanceY;
+        double dx = s * (int) viewDistanceX;
+        double dy = -s * (int) viewDistanceY;
         double r = generatorConfig.getRegion().getRadius();
 
-        generatorConfig.getRegion().set(cx, cy, r);
+        generatorConfig.getRegion().move(dx, dy, r);
 
         recycle(image, imageCopy, (int) viewDistanceX, (int) viewDistanceY);
 
@@ -523,8 +595,8 @@ public class FractalView extends View {
         final double pcy = (h / 2);
 
         if (s1x > s2x) {
-            final double p0x = pcx + (reg1.getCenterX() - reg2.getCenterX()) / s2x;
-            final double p0y = pcy + (reg1.getCenterY() - reg2.getCenterY()) / s2y;
+            final double p0x = pcx + reg2.getCenterOffsetX(reg1) / s2x;
+            final double p0y = pcy + reg2.getCenterOffsetY(reg1) / s2y;
             final double sx = s1x / s2x;
             final double sy = s1y / s2y;
             for (int p1y = 0; p1y < h; p1y++) {
@@ -542,8 +614,8 @@ public class FractalView extends View {
                 }
             }
         } else {
-            final double p0x = pcx + (reg2.getCenterX() - reg1.getCenterX()) / s1x;
-            final double p0y = pcy + (reg2.getCenterY() - reg1.getCenterY()) / s1y;
+            final double p0x = pcx + reg1.getCenterOffsetX(reg2) / s1x;
+            final double p0y = pcy + reg1.getCenterOffsetY(reg2) / s1y;
             final double sx = s2x / s1x;
             final double sy = s2y / s1y;
             for (int p2y = 0; p2y < h; p2y++) {
@@ -741,6 +813,7 @@ public class FractalView extends View {
 
         @Override
         public void onStopped(boolean cancelled) {
+            //Log.d(TAG, "Image generated: " + generator.getStatistics());
             postInvalidate();
         }
     }
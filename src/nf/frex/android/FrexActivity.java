@@ -201,10 +201,11 @@ public class FrexActivity extends Activity {
                 File imageFile = new File(imageUri.getPath());
                 String configName = FrexIO.getFilenameWithoutExt(imageFile);
                 File paramFile = new File(imageFile.getParent(), configName + FrexIO.PARAM_FILE_EXT);
+                File valuesFile = new File(imageFile.getParent(), configName + FrexIO.VALUES_FILE_EXT);
                 try {
                     FileInputStream fis = new FileInputStream(paramFile);
                     try {
-                        readFrexDoc(fis, configName);
+                        readFrexDoc(fis, configName, valuesFile);
                     } finally {
                         fis.close();
                     }
@@ -214,6 +215,10 @@ public class FrexActivity extends Activity {
             }
         } else if (requestCode == R.id.settings) {
             view.getGenerator().setNumTasks(SettingsActivity.getNumTasks(this));
+            view.getGeneratorConfig().setRectangleChecking(SettingsActivity.isRectangleChecking(this));
+            view.getGeneratorConfig().setPeriodicityChecking(SettingsActivity.isPeriodicityChecking(this));
+            view.getGeneratorConfig().setSeriesApproximation(SettingsActivity.isSeriesApproximation(this));
+            view.getGeneratorConfig().setProgressive(SettingsActivity.isProgressiveRendering(this));
         } else if (requestCode == SELECT_PICTURE_REQUEST_CODE) {
             final Uri imageUri = data.getData();
             final ColorQuantizer colorQuantizer = new ColorQuantizer();
@@ -257,7 +262,7 @@ public class FrexActivity extends Activity {
                         alert("I/O error: " + e.getLocalizedMessage());
                         return;
                     }
-                    ColorScheme colorScheme = colorQuantizer.quantize(bitmap, progressListener);
+                    ColorScheme colorScheme = Bitmaps.quantize(colorQuantizer, bitmap, progressListener);
                     progressDialog.dismiss();
                     if (colorScheme != null) {
                         Log.d(TAG, "SELECT_PICTURE_REQUEST_CODE: Got colorScheme");
@@ -318,16 +323,16 @@ public class FrexActivity extends Activity {
                                     final ProgressDialog progressDialog = new ProgressDialog(FrexActivity.this);
 
                                     Generator.ProgressListener progressListener = new Generator.ProgressListener() {
-                                        int numLines;
+                                        int numTiles;
 
                                         @Override
                                         public void onStarted(int numTasks) {
                                         }
 
                                         @Override
-                                        public void onSomeLinesComputed(int taskId, int line1, int line2) {
-                                            numLines += 1 + line2 - line1;
-                                            progressDialog.setProgress(numLines);
+                                        public synchronized void onSomeLinesComputed(int taskId, int line1, int line2) {
+                                            numTiles++;
+                                            progressDialog.setProgress(numTiles);
                                         }
 
                                         @Override
@@ -353,7 +358,7 @@ public class FrexActivity extends Activity {
                                     };
                                     progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
                                     progressDialog.setCancelable(true);
-                                    progressDialog.setMax(desiredHeight);
+                                    progressDialog.setMax(wallpaperGenerator.getNumTiles(desiredWidth, desiredHeight));
                                     progressDialog.setOnCancelListener(cancelListener);
                                     progressDialog.show();
 
@@ -382,7 +387,7 @@ public class FrexActivity extends Activity {
 
     private void setWallpaper(WallpaperManager wallpaperManager, Image image) {
         try {
-            wallpaperManager.setBitmap(image.createBitmap());
+            wallpaperManager.setBitmap(Bitmaps.createBitmap(image));
             alert(R.string.wallpaper_set_msg);
         } catch (OutOfMemoryError e) {
             alert(getString(R.string.out_of_memory));
@@ -443,7 +448,7 @@ public class FrexActivity extends Activity {
         Bitmap[] colorSchemeIcons = new Bitmap[colorSchemes.getSize()];
         for (int i = 0; i < colorSchemeIcons.length; i++) {
             ColorScheme colorScheme = colorSchemes.getValue(i);
-            colorSchemeIcons[i] = colorScheme.getGradientIcon();
+            colorSchemeIcons[i] = Bitmaps.getGradientIcon(colorScheme);
         }
 
         int checkedIndex = Registries.colorSchemes.getIndex(view.getColorSchemeId());
@@ -514,6 +519,16 @@ public class FrexActivity extends Activity {
             }
         });
 
+        final CheckBox colorHistogramCheckBox = (CheckBox) dialog.findViewById(R.id.color_histogram);
+        colorHistogramCheckBox.setChecked(view.isColorHistogram());
+        colorHistogramCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                view.setColorHistogram(isChecked);
+                view.recomputeColors();
+            }
+        });
+
         Button randomButton = (Button) dialog.findViewById(R.id.random_button);
         randomButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -567,10 +582,12 @@ public class FrexActivity extends Activity {
         int fractalTypeIndex = fractals.getIndex(view.getFractalId());
 
         final Spinner fractalTypeSpinner = (Spinner) dialog.findViewById(R.id.fractal_type_spinner);
+        final EditText formulaEditText = (EditText) dialog.findViewById(R.id.fractal_formula_edit_text);
         final SeekBar iterationsSeekBar = (SeekBar) dialog.findViewById(R.id.num_iterations_seek_bar);
         final EditText iterationsEditText = (EditText) dialog.findViewById(R.id.num_iterations_edit_text);
         final CheckBox juliaModeCheckBox = (CheckBox) dialog.findViewById(R.id.julia_mode_fractal_check_box);
         final CheckBox decoratedFractal = (CheckBox) dialog.findViewById(R.id.decorated_fractal_check_box);
+        final CheckBox smoothIterationsCheckBox = (CheckBox) dialog.findViewById(R.id.smooth_iterations_check_box);
         final Button okButton = (Button) dialog.findViewById(R.id.ok_button);
         final Button cancelButton = (Button) dialog.findViewById(R.id.cancel_button);
 
@@ -590,6 +607,7 @@ public class FrexActivity extends Activity {
                     juliaModeCheckBox.setChecked(false);
                 }
                 juliaModeCheckBox.setEnabled(sameFractal);
+                formulaEditText.setEnabled(fractal == Fractal.FORMULA);
             }
 
             @Override
@@ -599,6 +617,10 @@ public class FrexActivity extends Activity {
 
         iterationsEditText.setText(view.getIterMax() + "", TextView.BufferType.NORMAL);
 
+        String formula = view.getFractalFormula();
+        formulaEditText.setText(formula != null ? formula : FormulaFractal.DEFAULT_FORMULA, TextView.BufferType.NORMAL);
+        formulaEditText.setEnabled(view.getFractal() instanceof FormulaFractal);
+
         final double iterationsMin = 1;
         final double iterationsMax = 3;
         final SeekBarConfigurer iterationsSeekBarConfigurer = SeekBarConfigurer.create(iterationsSeekBar, iterationsMin, iterationsMax, true, view.getIterMax());
@@ -637,6 +659,8 @@ public class FrexActivity extends Activity {
 
         juliaModeCheckBox.setChecked(view.isJuliaModeFractal());
 
+        smoothIterationsCheckBox.setChecked(view.isSmoothIterations());
+
         okButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -647,16 +671,25 @@ public class FrexActivity extends Activity {
                     Toast.makeText(FrexActivity.this, getString(R.string.error_msg, e.getLocalizedMessage()), Toast.LENGTH_SHORT).show();
                     return;
                 }
+                Fractal fractal = fractals.getValue(fractalTypeSpinner.getSelectedItemPosition());
+                if (fractal == Fractal.FORMULA) {
+                    try {
+                        view.setFractalFormula(formulaEditText.getText().toString().trim());
+                    } catch (IllegalArgumentException e) {
+                        Toast.makeText(FrexActivity.this, getString(R.string.error_msg, e.getLocalizedMessage()), Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                }
                 dialog.dismiss();
                 String oldConfigName = view.getConfigName();
                 String newFractalId = fractals.getId(fractalTypeSpinner.getSelectedItemPosition());
-                Fractal fractal = fractals.getValue(fractalTypeSpinner.getSelectedItemPosition());
                 String oldFractalId = view.getFractalId();
                 boolean newJuliaModeFractal = juliaModeCheckBox.isChecked();
                 boolean oldJuliaModeFractal = view.isJuliaModeFractal();
                 view.setFractalId(newFractalId);
                 view.setIterMax(iterMax);
                 view.setDecoratedFractal(decoratedFractal.isChecked());
+                view.setSmoothIterations(smoothIterationsCheckBox.isChecked());
                 view.setJuliaModeFractal(newJuliaModeFractal);
                 boolean fractalTypeChanged = !oldFractalId.equals(newFractalId);
                 if (fractalTypeChanged) {
@@ -838,7 +871,7 @@ public class FrexActivity extends Activity {
                     }
                     if (stream != null) {
                         try {
-                            readFrexDoc(stream, Long.toHexString(new Random().nextLong()));
+                            readFrexDoc(stream, Long.toHexString(new Random().nextLong()), getValuesFile(frexDocUri));
                         } finally {
                             stream.close();
                         }
@@ -865,7 +898,18 @@ public class FrexActivity extends Activity {
         return response.getEntity().getContent();
     }
 
-    private void readFrexDoc(InputStream stream, String configName) throws IOException {
+    /**
+     * @return The values file next to a local parameter file, or {@code null}.
+     */
+    private static File getValuesFile(Uri frexDocUri) {
+        if ("file".equals(frexDocUri.getScheme()) && frexDocUri.getPath() != null) {
+            File paramFile = new File(frexDocUri.getPath());
+            return new File(paramFile.getParent(), FrexIO.getFilenameWithoutExt(paramFile) + FrexIO.VALUES_FILE_EXT);
+        }
+        return null;
+    }
+
+    private void readFrexDoc(InputStream stream, String configName, File valuesFile) throws IOException {
         Properties properties = new Properties();
         properties.load(stream);
 
@@ -874,6 +918,9 @@ public class FrexActivity extends Activity {
         view.getRegionHistory().clear();
         view.getRegionHistory().add(view.getGeneratorConfig().getRegion().clone());
         view.recomputeAll();
+        if (valuesFile != null && valuesFile.exists()) {
+            view.restoreValues(valuesFile);
+        }
 
         Registry<ColorScheme> colorSchemes = getColorSchemes();
         colorSchemes.add(view.getGeneratorConfig().getColorSchemeId(), view.getGeneratorConfig().getColorScheme());
@@ -882,25 +929,62 @@ public class FrexActivity extends Activity {
     private void saveFractal() {
         FrexIO frexIO = new FrexIO(this);
 
-        File paramFile = frexIO.getUniqueParamFile(view.getFractalId().toLowerCase());
-        if (!writeFrexDoc(paramFile)) {
+        final File paramFile = frexIO.getUniqueParamFile(view.getFractalId().toLowerCase());
+        Properties properties = new Properties();
+        view.saveInstanceState(new DefaultPropertySet(properties));
+        if (!writeFrexDoc(paramFile, properties)) {
             return;
         }
+        view.setConfigName(FrexIO.getFilenameWithoutExt(paramFile));
 
-        File imageFile = new File(paramFile.getParent(), FrexIO.getFilenameWithoutExt(paramFile) + FrexIO.IMAGE_FILE_EXT);
-        writeFrexImage(imageFile);
+        // The view keeps computing while the image is written, so we write a copy
+        final Image image = view.getImage();
+        final Image imageCopy;
+        try {
+            imageCopy = new Image(image.getWidth(), image.getHeight());
+        } catch (OutOfMemoryError e) {
+            alert(getString(R.string.out_of_memory));
+            return;
+        }
+        System.arraycopy(image.getColours(), 0, imageCopy.getColours(), 0, image.getColours().length);
+        System.arraycopy(image.getValues(), 0, imageCopy.getValues(), 0, image.getValues().length);
+        // Values are only written if they can be read back with the configuration restored from the parameter file
+        // and the current performance settings
+        final GeneratorConfig config = new GeneratorConfig();
+        config.setDefaults();
+        config.setRectangleChecking(view.getGeneratorConfig().isRectangleChecking());
+        config.setPeriodicityChecking(view.getGeneratorConfig().isPeriodicityChecking());
+        config.setSeriesApproximation(view.getGeneratorConfig().isSeriesApproximation());
+        config.restoreInstanceState(new DefaultPropertySet(properties));
+        final boolean valuesMatch = ValueRaster.getConfigHash(config) == ValueRaster.getConfigHash(view.getGeneratorConfig());
+        final int numThreads = view.getGenerator().getNumTasks();
 
-        updateMediaContentProvider(imageFile);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File imageFile = new File(paramFile.getParent(), FrexIO.getFilenameWithoutExt(paramFile) + FrexIO.IMAGE_FILE_EXT);
+                if (!writeFrexImage(imageFile, imageCopy, numThreads)) {
+                    return;
+                }
 
-        view.setConfigName(FrexIO.getFilenameWithoutExt(paramFile));
-        Toast.makeText(this, getString(R.string.fractal_saved), Toast.LENGTH_SHORT).show();
+                File valuesFile = new File(paramFile.getParent(), FrexIO.getFilenameWithoutExt(paramFile) + FrexIO.VALUES_FILE_EXT);
+                if (valuesMatch) {
+                    writeFrexValues(valuesFile, imageCopy, config);
+                } else {
+                    valuesFile.delete();
+                }
+
+                updateMediaContentProvider(imageFile);
+                alert(R.string.fractal_saved);
+            }
+        }).start();
     }
 
-    private boolean writeFrexDoc(File paramFile) {
+    private boolean writeFrexDoc(File paramFile, Properties properties) {
         try {
             FileOutputStream stream = new FileOutputStream(paramFile);
             try {
-                writeFrexDoc(stream);
+                properties.save(stream, "Generated by Frex on " + new Date());
             } finally {
                 stream.close();
             }
@@ -911,27 +995,44 @@ public class FrexActivity extends Activity {
         }
     }
 
-    private void writeFrexDoc(OutputStream stream) {
-        Properties properties = new Properties();
-        view.saveInstanceState(new DefaultPropertySet(properties));
-        properties.save(stream, "Generated by Frex on " + new Date());
-    }
-
-    private boolean writeFrexImage(File imageFile) {
+    /**
+     * Called from a background thread.
+     */
+    private boolean writeFrexImage(File imageFile, Image image, int numThreads) {
         try {
             FileOutputStream out = new FileOutputStream(imageFile);
             try {
-                view.captureBitmap().compress(FrexIO.IMAGE_FILE_FORMAT, 100, out);
+                // Rows are compressed directly from the image's colours, so no bitmap copy is needed
+                PngWriter.write(image, out, numThreads);
             } finally {
                 out.close();
             }
             return true;
         } catch (IOException e) {
-            Toast.makeText(this, getString(R.string.error_msg, e.getLocalizedMessage()), Toast.LENGTH_SHORT).show();
+            alert(getString(R.string.error_msg, e.getLocalizedMessage()));
             return false;
         }
     }
 
+    /**
+     * Writes the computed values, so that the fractal can be reopened without computing it again.
+     * Nothing is written for incomplete images. Errors are ignored, since the values file is optional.
+     * Called from a background thread.
+     */
+    private void writeFrexValues(File valuesFile, Image image, GeneratorConfig config) {
+        for (float value : image.getValues()) {
+            if (value < 0.0F) {
+                valuesFile.delete();
+                return;
+            }
+        }
+        try {
+            ValueRaster.write(valuesFile, image, config);
+        } catch (IOException e) {
+            valuesFile.delete();
+        }
+    }
+
     private void updateMediaContentProvider(File imageFile) {
         MediaScannerConnection.scanFile(this,
                                         new String[]{imageFile.getPath()},
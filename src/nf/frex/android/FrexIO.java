@@ -39,7 +39,7 @@ public class FrexIO {
 
     public static final String PARAM_FILE_EXT = ".frex";
     public static final String IMAGE_FILE_EXT = ".png";
-    public static final Bitmap.CompressFormat IMAGE_FILE_FORMAT = Bitmap.CompressFormat.PNG;
+    public static final String VALUES_FILE_EXT = ".values";
 
     private final Context context;
     private static File appStorageDir;
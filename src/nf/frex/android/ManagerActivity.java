@@ -184,6 +184,9 @@ public class ManagerActivity extends Activity {
 
     private boolean deleteFractal(File imageFile) {
         File paramFile = new File(imageFile.getParent(), FrexIO.getFilenameWithoutExt(imageFile) + FrexIO.PARAM_FILE_EXT);
+        File valuesFile = new File(imageFile.getParent(), FrexIO.getFilenameWithoutExt(imageFile) + FrexIO.VALUES_FILE_EXT);
+        // The values file is optional
+        valuesFile.delete();
         int n = 0;
         n += imageFile.delete() ? 1 : 0;
         n += paramFile.delete() ? 1 : 0;
@@ -38,6 +38,10 @@ import java.util.List;
 public class SettingsActivity extends PreferenceActivity implements SharedPreferences.OnSharedPreferenceChangeListener {
 
     public static final String NUM_TASKS_PREF_KEY = "num_tasks";
+    public static final String RECTANGLE_CHECKING_PREF_KEY = "rectangle_checking";
+    public static final String PERIODICITY_CHECKING_PREF_KEY = "periodicity_checking";
+    public static final String SERIES_APPROXIMATION_PREF_KEY = "series_approximation";
+    public static final String PROGRESSIVE_RENDERING_PREF_KEY = "progressive_rendering";
     public static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
     public static final int NUM_TASKS_DEFAULT = 2 * NUM_CORES;
 
@@ -87,6 +91,22 @@ public class SettingsActivity extends PreferenceActivity implements SharedPrefer
         return Integer.parseInt(string);
     }
 
+    public static boolean isRectangleChecking(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(RECTANGLE_CHECKING_PREF_KEY, false);
+    }
+
+    public static boolean isPeriodicityChecking(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PERIODICITY_CHECKING_PREF_KEY, false);
+    }
+
+    public static boolean isSeriesApproximation(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(SERIES_APPROXIMATION_PREF_KEY, true);
+    }
+
+    public static boolean isProgressiveRendering(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PROGRESSIVE_RENDERING_PREF_KEY, true);
+    }
+
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(NUM_TASKS_PREF_KEY)) {
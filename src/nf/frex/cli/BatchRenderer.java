@@ -0,0 +1,228 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.cli;
+
+import nf.frex.core.DefaultPropertySet;
+import nf.frex.core.Generator;
+import nf.frex.core.GeneratorConfig;
+import nf.frex.core.Image;
+import nf.frex.core.PngBandWriter;
+import nf.frex.core.PngWriter;
+import nf.frex.core.TiledRenderer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Renders {@code .frex} parameter files, as written by the Android app, to PNG images on any JVM:
+ * <pre>
+ *     java -cp frex.jar nf.frex.cli.BatchRenderer [-w width] [-h height] [-t tasks] [-s tileSize] [-o dir] file.frex ...
+ * </pre>
+ * Each image is written next to its parameter file, or into the given output directory, with the extension
+ * {@code .png}. Computation uses one task per processor by default. Except in histogram mode, lines are compressed
+ * while the lines below them are still being computed, see {@link PngBandWriter}.
+ * <p/>
+ * Images too large for the heap are rendered tile by tile using a temporary raster file in the output directory,
+ * see {@link TiledRenderer}. Tiling can be forced by giving a tile size.
+ *
+ * @author Norman Fomferra
+ */
+public class BatchRenderer {
+
+    private static final int DEFAULT_TILE_SIZE = 1024;
+
+    private int width = 1920;
+    private int height = 1080;
+    private int numTasks = Runtime.getRuntime().availableProcessors();
+    private int tileSize;
+    private File outputDir;
+
+    public static void main(String[] args) {
+        BatchRenderer renderer = new BatchRenderer();
+        List<File> files = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-w")) {
+                    renderer.width = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-h")) {
+                    renderer.height = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-t")) {
+                    renderer.numTasks = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-s")) {
+                    renderer.tileSize = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-o")) {
+                    renderer.outputDir = new File(args[++i]);
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    files.add(new File(arg));
+                }
+            }
+            if (renderer.width <= 0 || renderer.height <= 0 || renderer.numTasks <= 0 || renderer.tileSize < 0) {
+                throw new IllegalArgumentException("Image size, number of tasks and tile size must be positive");
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No files given");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: BatchRenderer [-w width] [-h height] [-t tasks] [-s tileSize] [-o dir] file.frex ...");
+            System.exit(1);
+        }
+
+        int numErrors = 0;
+        long totalTime = 0;
+        for (File file : files) {
+            try {
+                totalTime += renderer.render(file);
+            } catch (Exception e) {
+                System.err.println(file + ": " + e);
+                numErrors++;
+            }
+        }
+        System.out.printf("%d of %d file(s) rendered in %.1f s%n",
+                          files.size() - numErrors, files.size(), totalTime / 1000.0);
+        System.exit(numErrors > 0 ? 2 : 0);
+    }
+
+    /**
+     * Renders a parameter file.
+     *
+     * @param frexFile The parameter file
+     * @return The time in milliseconds spent on rendering and writing the image.
+     * @throws Exception If the file can't be read or written, or the computation was interrupted.
+     */
+    public long render(File frexFile) throws Exception {
+        Properties properties = new Properties();
+        InputStream inputStream = new FileInputStream(frexFile);
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        GeneratorConfig config = new GeneratorConfig();
+        config.setDefaults();
+        config.restoreInstanceState(new DefaultPropertySet(properties));
+        config.setRectangleChecking(true);
+        config.setPeriodicityChecking(true);
+        config.setSeriesApproximation(true);
+        config.setProgressive(false);
+
+        String name = frexFile.getName();
+        if (name.endsWith(".frex")) {
+            name = name.substring(0, name.length() - 5);
+        }
+        File dir = outputDir != null ? outputDir : frexFile.getAbsoluteFile().getParentFile();
+        File pngFile = new File(dir, name + ".png");
+
+        int tileSize = this.tileSize;
+        if (tileSize == 0 && 8L * width * height > Runtime.getRuntime().maxMemory() / 2) {
+            tileSize = DEFAULT_TILE_SIZE;
+        }
+        if (tileSize > 0) {
+            return renderTiled(config, pngFile, tileSize);
+        }
+
+        Image image = new Image(width, height);
+        Arrays.fill(image.getValues(), Image.MISSING_VALUE);
+        // In histogram mode, colours are only known after all values have been computed
+        final PngBandWriter bandWriter = config.isColorHistogram()
+                ? null : new PngBandWriter(width, height, Generator.DEFAULT_TILE_SIZE);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Generator generator = new Generator(config, numTasks, bandWriter != null ? bandWriter : new Generator.ProgressListener() {
+            @Override
+            public void onStarted(int numTasks) {
+            }
+
+            @Override
+            public void onSomeLinesComputed(int taskId, int line1, int line2) {
+            }
+
+            @Override
+            public void onStopped(boolean cancelled) {
+                latch.countDown();
+            }
+        });
+        long t0 = System.currentTimeMillis();
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(pngFile), 0x10000);
+        try {
+            PngWriter writer = new PngWriter(outputStream, width, height, numTasks);
+            try {
+                if (bandWriter != null) {
+                    // Lines are compressed by this thread while the lines below them are computed
+                    generator.startTopDown(image);
+                    if (!bandWriter.write(image, writer)) {
+                        throw new IOException("Computation stopped before the image was complete");
+                    }
+                } else {
+                    generator.start(image, false);
+                    latch.await();
+                    writer.writeRows(image.getColours(), 0, height);
+                    writer.finish();
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            generator.shutdown();
+            outputStream.close();
+        }
+        long t1 = System.currentTimeMillis();
+
+        System.out.printf("%s: %dx%d %s, %s, render %d ms (%.2f Mpixel/s)%n",
+                          pngFile, width, height, config.getFractalId(),
+                          generator.getStatistics().getPrecision(),
+                          t1 - t0, width * (double) height / 1000.0 / Math.max(t1 - t0, 1));
+        return t1 - t0;
+    }
+
+    private long renderTiled(GeneratorConfig config, File pngFile, int tileSize) throws Exception {
+        File rasterFile = File.createTempFile("frex", ".raster", pngFile.getParentFile());
+        long t0 = System.currentTimeMillis();
+        try {
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(pngFile), 0x10000);
+            try {
+                new TiledRenderer(config, width, height, tileSize, numTasks).render(rasterFile, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            rasterFile.delete();
+        }
+        long t1 = System.currentTimeMillis();
+
+        System.out.printf("%s: %dx%d %s, %dx%d tiles, render %d ms (%.2f Mpixel/s)%n",
+                          pngFile, width, height, config.getFractalId(), tileSize, tileSize,
+                          t1 - t0, width * (double) height / 1000.0 / Math.max(t1 - t0, 1));
+        return t1 - t0;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * Helpers for colours packed into ints as {@code 0xAARRGGBB}, the format of {@link Image#getColours()}.
+ * Compatible with {@code android.graphics.Color}, but usable on any JVM.
+ *
+ * @author Norman Fomferra
+ */
+public final class Argb {
+    public static final int BLACK = 0xFF000000;
+    public static final int WHITE = 0xFFFFFFFF;
+    public static final int RED = 0xFFFF0000;
+    public static final int GREEN = 0xFF00FF00;
+    public static final int BLUE = 0xFF0000FF;
+    public static final int YELLOW = 0xFFFFFF00;
+
+    private static final String[] NAMES = {
+            "black", "white", "red", "green", "blue", "yellow", "cyan", "magenta",
+            "gray", "grey", "lightgray", "lightgrey", "darkgray", "darkgrey",
+            "aqua", "fuchsia", "lime", "maroon", "navy", "olive", "purple", "silver", "teal"
+    };
+    private static final int[] NAMED_COLORS = {
+            BLACK, WHITE, RED, GREEN, BLUE, YELLOW, 0xFF00FFFF, 0xFFFF00FF,
+            0xFF888888, 0xFF888888, 0xFFCCCCCC, 0xFFCCCCCC, 0xFF444444, 0xFF444444,
+            0xFF00FFFF, 0xFFFF00FF, 0xFF00FF00, 0xFF800000, 0xFF000080, 0xFF808000, 0xFF800080, 0xFFC0C0C0, 0xFF008080
+    };
+
+    private Argb() {
+    }
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    public static int rgb(int red, int green, int blue) {
+        return argb(255, red, green, blue);
+    }
+
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Parses colours given as {@code #RRGGBB}, {@code #AARRGGBB} or by name, e.g. {@code "red"}.
+     *
+     * @param text The colour text
+     * @return The colour
+     * @throws IllegalArgumentException If the text is not a valid colour.
+     */
+    public static int parse(String text) throws IllegalArgumentException {
+        if (text.startsWith("#") && (text.length() == 7 || text.length() == 9) && Character.digit(text.charAt(1), 16) >= 0) {
+            try {
+                final long value = Long.parseLong(text.substring(1), 16);
+                return text.length() == 7 ? (int) value | BLACK : (int) value;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid color: " + text);
+            }
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(text)) {
+                return NAMED_COLORS[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown color: " + text);
+    }
+
+    /**
+     * @param color The colour
+     * @return The colour as text of the form {@code #aarrggbb}, which can be parsed by {@link #parse}.
+     */
+    public static String format(int color) {
+        final String hex = Integer.toHexString(color);
+        return "#00000000".substring(0, 9 - hex.length()) + hex;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * Maps pixel values to colours using the colour gradient, gain, offset and repeat mode of a generator configuration.
+ * In repeat mode, the gradient is stored together with its mirror image, so that a value maps to a colour
+ * by a single table lookup.
+ * <p/>
+ * In histogram mode, values are equalised by a {@link Histogram} of the image values before they are mapped.
+ *
+ * @author Norman Fomferra
+ */
+public final class ColorMapper {
+    private final int[] colorTable;
+    private final int numColors;
+    private final float gain;
+    private final float offset;
+    private final boolean repeat;
+    private final float[] equalizedValues;
+    private final float minSample;
+    private final float binsPerValue;
+
+    public ColorMapper(GeneratorConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config    The generator configuration
+     * @param histogram The histogram used to equalise values if the configuration's histogram mode is on,
+     *                  may be {@code null}.
+     */
+    public ColorMapper(GeneratorConfig config, Histogram histogram) {
+        this(config.getColorGradient(), config.getColorGain(), config.getColorOffset(), config.isColorRepeat(),
+             config.isColorHistogram() ? histogram : null);
+    }
+
+    public ColorMapper(int[] colorGradient, double colorGain, double colorOffset, boolean colorRepeat) {
+        this(colorGradient, colorGain, colorOffset, colorRepeat, null);
+    }
+
+    public ColorMapper(int[] colorGradient, double colorGain, double colorOffset, boolean colorRepeat,
+                       Histogram histogram) {
+        final int n = colorGradient.length;
+        if (colorRepeat) {
+            colorTable = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                colorTable[i] = colorGradient[i];
+                colorTable[2 * n - i - 1] = colorGradient[i];
+            }
+        } else {
+            colorTable = colorGradient.clone();
+        }
+        numColors = colorTable.length;
+        gain = (float) (colorGain * n);
+        offset = (float) colorOffset;
+        repeat = colorRepeat;
+        if (histogram != null) {
+            equalizedValues = histogram.createEqualizedValues();
+            minSample = histogram.getMinSample();
+            binsPerValue = histogram.getBinsPerValue();
+        } else {
+            equalizedValues = null;
+            minSample = 0.0F;
+            binsPerValue = 0.0F;
+        }
+    }
+
+    /**
+     * @return The number of gradient entries per unit pixel value.
+     */
+    public float getGain() {
+        return gain;
+    }
+
+    /**
+     * @param value A pixel value, must not be negative
+     * @return The colour of the given pixel value
+     */
+    public int getColor(float value) {
+        if (equalizedValues != null) {
+            value = equalize(value);
+        }
+        final int colorIndex = (int) (gain * value + offset);
+        if (repeat) {
+            return colorTable[colorIndex % numColors];
+        } else {
+            return colorTable[colorIndex < numColors ? colorIndex : numColors - 1];
+        }
+    }
+
+    /**
+     * Interpolates the equalised value linearly between those of the boundaries of the value's histogram bin.
+     * Values are taken to lie in the middle of their bin, so that values of the lowest bin don't get the colour
+     * of zero.
+     */
+    private float equalize(float value) {
+        if (value <= 0.0F) {
+            return 0.0F;
+        }
+        final float position = (value - minSample) * binsPerValue + 0.5F;
+        if (position <= 0.0F) {
+            return equalizedValues[0];
+        }
+        final int lastBin = equalizedValues.length - 2;
+        final int bin = position < lastBin ? (int) position : lastBin;
+        final float fraction = Math.min(position - bin, 1.0F);
+        return equalizedValues[bin] + fraction * (equalizedValues[bin + 1] - equalizedValues[bin]);
+    }
+
+    /**
+     * Maps a range of pixel values to colours. Negative values denote missing values, their colours are left
+     * unchanged.
+     *
+     * @param values The pixel values
+     * @param colors The pixel colours
+     * @param start  The index of the first pixel
+     * @param end    The index after the last pixel
+     * @return The number of missing values
+     */
+    public int mapColors(float[] values, int[] colors, int start, int end) {
+        final int[] colorTable = this.colorTable;
+        final int numColors = this.numColors;
+        final int lastColorIndex = numColors - 1;
+        final float gain = this.gain;
+        final float offset = this.offset;
+        int numMissing = 0;
+        float value;
+        if (equalizedValues != null) {
+            for (int i = start; i < end; i++) {
+                value = values[i];
+                if (value >= 0.0F) {
+                    colors[i] = getColor(value);
+                } else {
+                    numMissing++;
+                }
+            }
+        } else if (repeat) {
+            for (int i = start; i < end; i++) {
+                value = values[i];
+                if (value >= 0.0F) {
+                    colors[i] = colorTable[(int) (gain * value + offset) % numColors];
+                } else {
+                    numMissing++;
+                }
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                value = values[i];
+                if (value >= 0.0F) {
+                    colors[i] = colorTable[Math.min((int) (gain * value + offset), lastColorIndex)];
+                } else {
+                    numMissing++;
+                }
+            }
+        }
+        return numMissing;
+    }
+}
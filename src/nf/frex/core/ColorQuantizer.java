@@ -19,9 +19,6 @@
 
 package nf.frex.core;
 
-
-import android.graphics.Bitmap;
-
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -70,17 +67,16 @@ public class ColorQuantizer {
         this.canceled = canceled;
     }
 
-    public ColorScheme quantize(Bitmap bitmap, ProgressListener progressListener) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
+    /**
+     * @param pixels           The pixel colours of an image, see {@link Argb}
+     * @param progressListener Receives progress messages
+     * @return A colour scheme made of the image's main colours, or {@code null} if cancelled.
+     */
+    public ColorScheme quantize(int[] pixels, ProgressListener progressListener) {
         AccuColor[] newCenterColors = new AccuColor[clusterCount];
         for (int i = 0; i < newCenterColors.length; i++) {
             newCenterColors[i] = new AccuColor();
         }
-        int[] pixels = new int[width * height];
-
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
 
         final Color[] centerColors = new Color[clusterCount];
         for (int i = 0; i < centerColors.length; i++) {
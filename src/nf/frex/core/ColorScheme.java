@@ -19,56 +19,52 @@
 
 package nf.frex.core;
 
-import android.graphics.Bitmap;
-import android.graphics.Color;
-
 /**
  * @author Norman Fomferra
  */
 public class ColorScheme {
 
-    private final static int _ORANGE = Color.parseColor("#ff8000");
-    private final static int _GREEN = Color.parseColor("#008000");
-    private final static int _INDIGO = Color.parseColor("#4b0082");
-    private final static int _VIOLET = Color.parseColor("#9400d3");
-    private final static int _DARK_GREY = Color.parseColor("#aaaaaa");
-    private final static int _LIGHT_GREY = Color.parseColor("#444444");
+    private final static int _ORANGE = Argb.parse("#ff8000");
+    private final static int _GREEN = Argb.parse("#008000");
+    private final static int _INDIGO = Argb.parse("#4b0082");
+    private final static int _VIOLET = Argb.parse("#9400d3");
+    private final static int _DARK_GREY = Argb.parse("#aaaaaa");
+    private final static int _LIGHT_GREY = Argb.parse("#444444");
 
     public final static ColorScheme CLOUDS = new ColorScheme(
-            Color.parseColor("#19191d"),
-            Color.parseColor("#605f67"),
-            Color.parseColor("#737486"),
-            Color.parseColor("#b8a3a0"),
-            Color.parseColor("#8d94b0"),
-            Color.parseColor("#ffc8a0"),
-            Color.parseColor("#fefc8d"),
-            Color.parseColor("#fefec2")
+            Argb.parse("#19191d"),
+            Argb.parse("#605f67"),
+            Argb.parse("#737486"),
+            Argb.parse("#b8a3a0"),
+            Argb.parse("#8d94b0"),
+            Argb.parse("#ffc8a0"),
+            Argb.parse("#fefc8d"),
+            Argb.parse("#fefec2")
     );
     public final static ColorScheme BRICKS = new ColorScheme(
-            Color.parseColor("#120e05"),
-            Color.parseColor("#363531"),
-            Color.parseColor("#6d6960"),
-            Color.parseColor("#6d6960"),
-            Color.parseColor("#d2c9ac"),
-            Color.parseColor("#d9c7a1"),
-            Color.parseColor("#6d6960"),
-            Color.parseColor("#7d6b47"),
-            Color.parseColor("#f5f2ed")
+            Argb.parse("#120e05"),
+            Argb.parse("#363531"),
+            Argb.parse("#6d6960"),
+            Argb.parse("#6d6960"),
+            Argb.parse("#d2c9ac"),
+            Argb.parse("#d9c7a1"),
+            Argb.parse("#6d6960"),
+            Argb.parse("#7d6b47"),
+            Argb.parse("#f5f2ed")
     );
-    public final static ColorScheme EARTH = new ColorScheme(Color.BLACK, Color.rgb(94, 51, 31), Color.rgb(240, 214, 171), Color.WHITE);
-    public final static ColorScheme OCEAN = new ColorScheme(Color.BLACK, Color.rgb(3, 20, 46), Color.rgb(135, 148, 166), Color.rgb(133, 166, 122), Color.WHITE);
-    public final static ColorScheme RAINBOW = new ColorScheme(Color.RED, Color.YELLOW, _GREEN, Color.BLUE, _INDIGO, _VIOLET);
-    public final static ColorScheme FIRE = new ColorScheme(Color.BLACK, Color.RED, Color.YELLOW, Color.WHITE, Color.rgb(127, 127, 255));
-    public final static ColorScheme HEAT = new ColorScheme(Color.BLACK, Color.RED, Color.YELLOW, Color.WHITE);
-    public final static ColorScheme BLACK_AND_WHITE = new ColorScheme(Color.BLACK, Color.WHITE);
-    public final static ColorScheme METAL = new ColorScheme(Color.BLACK, Color.WHITE, _DARK_GREY, Color.WHITE, _LIGHT_GREY, Color.WHITE);
-    public final static ColorScheme SUNSET = new ColorScheme(Color.BLACK, _ORANGE, Color.WHITE, Color.rgb(255, 90, 100), Color.WHITE);
-    public final static ColorScheme ORANGE = new ColorScheme(Color.BLACK, _ORANGE, Color.WHITE);
-    public final static ColorScheme YELLOW = new ColorScheme(Color.BLACK, Color.YELLOW, Color.WHITE);
-    public final static ColorScheme RED = new ColorScheme(Color.BLACK, Color.RED, Color.WHITE);
-    public final static ColorScheme GREEN = new ColorScheme(Color.BLACK, Color.GREEN, Color.WHITE);
-    public final static ColorScheme BLUE = new ColorScheme(Color.BLACK, Color.BLUE, Color.WHITE);
-    private Bitmap icon;
+    public final static ColorScheme EARTH = new ColorScheme(Argb.BLACK, Argb.rgb(94, 51, 31), Argb.rgb(240, 214, 171), Argb.WHITE);
+    public final static ColorScheme OCEAN = new ColorScheme(Argb.BLACK, Argb.rgb(3, 20, 46), Argb.rgb(135, 148, 166), Argb.rgb(133, 166, 122), Argb.WHITE);
+    public final static ColorScheme RAINBOW = new ColorScheme(Argb.RED, Argb.YELLOW, _GREEN, Argb.BLUE, _INDIGO, _VIOLET);
+    public final static ColorScheme FIRE = new ColorScheme(Argb.BLACK, Argb.RED, Argb.YELLOW, Argb.WHITE, Argb.rgb(127, 127, 255));
+    public final static ColorScheme HEAT = new ColorScheme(Argb.BLACK, Argb.RED, Argb.YELLOW, Argb.WHITE);
+    public final static ColorScheme BLACK_AND_WHITE = new ColorScheme(Argb.BLACK, Argb.WHITE);
+    public final static ColorScheme METAL = new ColorScheme(Argb.BLACK, Argb.WHITE, _DARK_GREY, Argb.WHITE, _LIGHT_GREY, Argb.WHITE);
+    public final static ColorScheme SUNSET = new ColorScheme(Argb.BLACK, _ORANGE, Argb.WHITE, Argb.rgb(255, 90, 100), Argb.WHITE);
+    public final static ColorScheme ORANGE = new ColorScheme(Argb.BLACK, _ORANGE, Argb.WHITE);
+    public final static ColorScheme YELLOW = new ColorScheme(Argb.BLACK, Argb.YELLOW, Argb.WHITE);
+    public final static ColorScheme RED = new ColorScheme(Argb.BLACK, Argb.RED, Argb.WHITE);
+    public final static ColorScheme GREEN = new ColorScheme(Argb.BLACK, Argb.GREEN, Argb.WHITE);
+    public final static ColorScheme BLUE = new ColorScheme(Argb.BLACK, Argb.BLUE, Argb.WHITE);
 
     public static class TiePoint {
         private double position;
@@ -88,11 +84,7 @@ public class ColorScheme {
         }
 
         public String getColorString() {
-            return "#"
-                    + (Color.alpha(color) < 16 ? "0" : "") + Integer.toHexString(Color.alpha(color))
-                    + (Color.red(color) < 16 ? "0" : "") + Integer.toHexString(Color.red(color))
-                    + (Color.green(color) < 16 ? "0" : "") + Integer.toHexString(Color.green(color))
-                    + (Color.blue(color) < 16 ? "0" : "") + Integer.toHexString(Color.blue(color));
+            return Argb.format(color);
         }
     }
 
@@ -137,7 +129,7 @@ public class ColorScheme {
                 throw new IllegalArgumentException("Invalid color scheme tie-point");
             }
             tiePoints[i] = new TiePoint(Double.parseDouble(posCol[0].trim()),
-                                        Color.parseColor(posCol[1].trim()));
+                                        Argb.parse(posCol[1].trim()));
         }
         return new ColorScheme(tiePoints);
     }
@@ -165,29 +157,15 @@ public class ColorScheme {
         return gradient;
     }
 
-    public Bitmap getGradientIcon() {
-        if (icon == null) {
-            int width = 256;
-            int height = 48;
-            int[] colors = new int[width * height];
-            int[] palette = getGradient(width);
-            for (int j = 0; j < height; j++) {
-                System.arraycopy(palette, 0, colors, j * width, width);
-            }
-            icon = Bitmap.createBitmap(colors, width, height, Bitmap.Config.ARGB_8888);
-        }
-        return icon;
-    }
-
     private int getColor(TiePoint tp1, TiePoint tp2, double position) {
         double w = (position - tp1.getPosition()) / (tp2.getPosition() - tp1.getPosition());
         int c1 = tp1.getColor();
         int c2 = tp2.getColor();
-        int a = crop8((int) (Color.alpha(c1) + w * (Color.alpha(c2) - Color.alpha(c1))));
-        int r = crop8((int) (Color.red(c1) + w * (Color.red(c2) - Color.red(c1))));
-        int g = crop8((int) (Color.green(c1) + w * (Color.green(c2) - Color.green(c1))));
-        int b = crop8((int) (Color.blue(c1) + w * (Color.blue(c2) - Color.blue(c1))));
-        return Color.argb(a, r, g, b);
+        int a = crop8((int) (Argb.alpha(c1) + w * (Argb.alpha(c2) - Argb.alpha(c1))));
+        int r = crop8((int) (Argb.red(c1) + w * (Argb.red(c2) - Argb.red(c1))));
+        int g = crop8((int) (Argb.green(c1) + w * (Argb.green(c2) - Argb.green(c1))));
+        int b = crop8((int) (Argb.blue(c1) + w * (Argb.blue(c2) - Argb.blue(c1))));
+        return Argb.argb(a, r, g, b);
     }
 
     private static int crop8(int iv) {
@@ -25,86 +25,212 @@ import static java.lang.Math.*;
  * @author Norman Fomferra
  */
 public interface DistanceFunction {
-    DistanceFunction STINGS = new DistanceFunction() {
+    /**
+     * A distance function which sums up the vicinities of orbit points with a loop of its own. Since each
+     * implementation has its own copy of the loop, the call of {@link #evaluate} within it only ever sees one
+     * type and can be inlined. A loop shared by all distance functions calls them through a single call site,
+     * which soon sees many types and then can't be inlined anymore.
+     */
+    abstract class Summing implements DistanceFunction {
+        /**
+         * Adds the vicinities {@code 1 / (1 + d * d)} of a number of points to a sum,
+         * where {@code d = scale * evaluate(x, y)}.
+         *
+         * @return The new sum.
+         */
+        public abstract double sumVicinities(double sum, double[] x, double[] y, int n, double scale);
+    }
+
+    DistanceFunction STINGS = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return min(abs(x), abs(y));
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
-    DistanceFunction DENSE_STINGS = new DistanceFunction() {
+    DistanceFunction DENSE_STINGS = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return min(min(abs(x), abs(y - x)), min(abs(y), abs(y + x)));
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
-    DistanceFunction OVERLAID_STINGS = new DistanceFunction() {
+    DistanceFunction OVERLAID_STINGS = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return log(x * x);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
-    DistanceFunction HAIR = new DistanceFunction() {
+    DistanceFunction HAIR = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             double v1 = (x + 1) * x * (x - 1);
             double v2 = (y + 1) * y * (y - 1);
             return min(abs(v1), abs(v2));
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction CURLS = new DistanceFunction() {
+    DistanceFunction CURLS = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             double v = 1.0 + sin(x);
             return min(y - v, y + v);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction ANTENNAE = new DistanceFunction() {
+    DistanceFunction ANTENNAE = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return x * x - y * y;
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction SPIDER_NET = new DistanceFunction() {
+    DistanceFunction SPIDER_NET = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return 1.0 + min(sin(x), sin(y));
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction RINGS = new DistanceFunction() {
+    DistanceFunction RINGS = new Summing() {
         @Override
         public final double evaluate(double x, double y) {
             double v = x * x + y * y;
             return v > 1.0 ? v - 1.0 : 1.0 - v;
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
-    DistanceFunction DOUBLE_RINGS = new DistanceFunction() {
+    DistanceFunction DOUBLE_RINGS = new Summing() {
         @Override
         public final double evaluate(double x, double y) {
             double v = x * x + y * y;
             return min(v > 1.0 ? v - 1.0 : 1.0 - v, v > 2.0 ? v - 2.0 : 2.0 - v);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
-    DistanceFunction TRIPLE_RINGS = new DistanceFunction() {
+    DistanceFunction TRIPLE_RINGS = new Summing() {
         @Override
         public final double evaluate(double x, double y) {
             double v = x * x + y * y;
             return min(min(v > 1.0 ? v - 1.0 : 1.0 - v, v > 2.0 ? v - 2.0 : 2.0 - v), v > 3.0 ? v - 3.0 : 3.0 - v);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction CIRCLES = new DistanceFunction() {
+    DistanceFunction CIRCLES = new Summing() {
         @Override
         public final double evaluate(double x, double y) {
             double v = log(x * x + y * y);
             return 1.0 + sin(v);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction FOUR_CIRCLES = new DistanceFunction() {
+    DistanceFunction FOUR_CIRCLES = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             double dx1 = (x - 1) * (x - 1);
@@ -113,16 +239,36 @@ public interface DistanceFunction {
             double dy2 = (y + 1) * (y + 1);
             return log(min(min(dx1 + dy1, dx1 + dy2), min(dx2 + dy1, dx2 + dy2)));
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction BUBBLES = new DistanceFunction() {
+    DistanceFunction BUBBLES = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             return x * x + y * y;
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
-    DistanceFunction SWIRLS = new DistanceFunction() {
+    DistanceFunction SWIRLS = new Summing() {
         @Override
         public double evaluate(double x, double y) {
             x += 1;
@@ -130,6 +276,16 @@ public interface DistanceFunction {
             double r = log(x * x + y * y);
             return x * sin(r) - y * cos(r);
         }
+
+        @Override
+        public double sumVicinities(double sum, double[] x, double[] y, int n, double scale) {
+            double distance;
+            for (int i = 0; i < n; i++) {
+                distance = scale * evaluate(x[i], y[i]);
+                sum += 1.0 / (1.0 + distance * distance);
+            }
+            return sum;
+        }
     };
 
 
@@ -0,0 +1,96 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.math.BigDecimal;
+
+/**
+ * Building blocks for double-double arithmetic. A double-double number is the unevaluated sum of two doubles
+ * {@code hi + lo} with {@code |lo| <= ulp(hi) / 2}, which gives about 106 bits of precision.
+ * <p/>
+ * In order to keep orbit computations free of object allocations, double-double numbers are not represented
+ * by objects. Kernels keep the {@code hi} and {@code lo} parts in local variables and use the methods of this
+ * class to compute the rounding errors of the basic operations. E.g. the sum {@code (sh, sl)} of
+ * {@code (ah, al)} and {@code (bh, bl)} is computed as follows:
+ * <pre>
+ *    s = ah + bh;
+ *    e = DoubleDouble.sumError(ah, bh, s) + (al + bl);
+ *    sh = s + e;
+ *    sl = e - (sh - s);
+ * </pre>
+ * and the product {@code (ph, pl)} as follows:
+ * <pre>
+ *    p = ah * bh;
+ *    e = DoubleDouble.productError(ah, bh, p) + (ah * bl + al * bh);
+ *    ph = p + e;
+ *    pl = e - (ph - p);
+ * </pre>
+ *
+ * @author Norman Fomferra
+ */
+public final class DoubleDouble {
+    private static final double SPLIT = 134217729.0; // 2^27 + 1
+
+    private DoubleDouble() {
+    }
+
+    /**
+     * @param a A summand
+     * @param b Another summand
+     * @param s The rounded sum {@code a + b}
+     * @return The exact rounding error of {@code s}, so that {@code a + b = s + error}.
+     */
+    public static double sumError(double a, double b, double s) {
+        final double bb = s - a;
+        return (a - (s - bb)) + (b - bb);
+    }
+
+    /**
+     * @param a A factor
+     * @param b Another factor
+     * @param p The rounded product {@code a * b}
+     * @return The exact rounding error of {@code p}, so that {@code a * b = p + error}.
+     */
+    public static double productError(double a, double b, double p) {
+        double t = SPLIT * a;
+        final double a1 = t - (t - a);
+        final double a2 = a - a1;
+        t = SPLIT * b;
+        final double b1 = t - (t - b);
+        final double b2 = b - b1;
+        return ((a1 * b1 - p) + a1 * b2 + a2 * b1) + a2 * b2;
+    }
+
+    /**
+     * @param value A number
+     * @return The double closest to the given number, that is the {@code hi} part of its double-double representation.
+     */
+    public static double hi(BigDecimal value) {
+        return value.doubleValue();
+    }
+
+    /**
+     * @param value A number
+     * @return The {@code lo} part of the given number's double-double representation.
+     */
+    public static double lo(BigDecimal value) {
+        return value.subtract(new BigDecimal(value.doubleValue())).doubleValue();
+    }
+}
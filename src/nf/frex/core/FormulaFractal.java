@@ -0,0 +1,497 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.util.Arrays;
+
+/**
+ * A fractal defined by a user-given iteration formula {@code z' = f(z, c)} over complex numbers, e.g.
+ * {@code z^3 + c} or {@code sin(z) * c}. The orbit escapes if {@code |z|^2} exceeds the bail-out value.
+ * <p/>
+ * Formulas may use the variables {@code z} and {@code c}, real numbers, the imaginary unit {@code i}, e.g. {@code 2i},
+ * the constant {@code pi}, the operators {@code + - * / ^} and the functions {@code sin, cos, sinh, cosh,
+ * exp, log, sqrt, conj} and {@code abs}, where {@code abs} takes the absolute values of the real and
+ * imaginary parts, as used by the "Burning Ship" fractal.
+ * <p/>
+ * Since Android can't load generated bytecode, formulas are compiled into a flat program of instructions
+ * operating on an array of complex registers, which is executed once per iteration. The compiler evaluates
+ * constant sub-expressions in advance and expands integer powers into multiplications.
+ *
+ * @author Norman Fomferra
+ */
+public final class FormulaFractal extends Fractal {
+    public static final String DEFAULT_FORMULA = "z^2 + c";
+
+    private static final int Z = 0;
+    private static final int C = 1;
+
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int POW = 4;
+    private static final int NEG = 5;
+    private static final int SQR = 6;
+    private static final int SIN = 7;
+    private static final int COS = 8;
+    private static final int SINH = 9;
+    private static final int COSH = 10;
+    private static final int EXP = 11;
+    private static final int LOG = 12;
+    private static final int SQRT = 13;
+    private static final int CONJ = 14;
+    private static final int ABS = 15;
+
+    private static final String[] FUNCTION_NAMES = {"sin", "cos", "sinh", "cosh", "exp", "log", "sqrt", "conj", "abs"};
+    private static final int[] FUNCTION_OPS = {SIN, COS, SINH, COSH, EXP, LOG, SQRT, CONJ, ABS};
+
+    private final String formula;
+    /**
+     * Instructions of four ints each: operation, destination, first and second operand register.
+     */
+    private final int[] code;
+    /**
+     * Initial register values, holding the constants, two doubles per register.
+     */
+    private final double[] initialRegisters;
+    private final int resultRegister;
+    private final ThreadLocal<double[]> registers;
+
+    /**
+     * @param formula The iteration formula
+     * @throws IllegalArgumentException If the formula can't be parsed.
+     */
+    public FormulaFractal(String formula) throws IllegalArgumentException {
+        super(new Region(0.0, 0.0, 2.0), 100, 100.0);
+        final Compiler compiler = new Compiler(formula);
+        this.formula = formula;
+        this.resultRegister = compiler.compile();
+        this.code = Arrays.copyOf(compiler.code, compiler.codeLength);
+        this.initialRegisters = Arrays.copyOf(compiler.values, 2 * compiler.numRegisters);
+        this.registers = new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue() {
+                return initialRegisters.clone();
+            }
+        };
+    }
+
+    public String getFormula() {
+        return formula;
+    }
+
+    @Override
+    public int computeOrbit(double initX, double initY,
+                            double constX, double constY,
+                            int iterMax, double bailOut,
+                            double[] orbitX, double[] orbitY) {
+        return iterate(initX, initY, constX, constY, iterMax, bailOut, orbitX, orbitY, null);
+    }
+
+    @Override
+    public int computeOrbit(double initX, double initY,
+                            double constX, double constY,
+                            int iterMax, double bailOut,
+                            OrbitAccumulator accumulator) {
+        return iterate(initX, initY, constX, constY, iterMax, bailOut, null, null, accumulator);
+    }
+
+    @Override
+    public int computeIterations(double initX, double initY,
+                                 double constX, double constY,
+                                 int iterMax, double bailOut) {
+        return iterate(initX, initY, constX, constY, iterMax, bailOut, null, null, null);
+    }
+
+    private int iterate(double initX, double initY,
+                        double constX, double constY,
+                        int iterMax, double bailOut,
+                        double[] orbitX, double[] orbitY,
+                        OrbitAccumulator accumulator) {
+        final int[] code = this.code;
+        final double[] r = registers.get();
+        final int result = 2 * resultRegister;
+        double zx = initX;
+        double zy = initY;
+        r[2 * C] = constX;
+        r[2 * C + 1] = constY;
+        for (int iter = 0; iter < iterMax; iter++) {
+            // Also true for NaN
+            if (!(zx * zx + zy * zy <= bailOut)) {
+                return iter;
+            }
+            r[2 * Z] = zx;
+            r[2 * Z + 1] = zy;
+            execute(code, 0, code.length, r);
+            zx = r[result];
+            zy = r[result + 1];
+            if (orbitX != null) {
+                orbitX[iter] = zx;
+                orbitY[iter] = zy;
+            } else if (accumulator != null) {
+                accumulator.accumulate(zx, zy);
+            }
+        }
+        return iterMax;
+    }
+
+    private static void execute(int[] code, int start, int end, double[] r) {
+        double x, y, u, v, t;
+        for (int pc = start; pc < end; pc += 4) {
+            final int d = 2 * code[pc + 1];
+            final int a = 2 * code[pc + 2];
+            final int b = 2 * code[pc + 3];
+            x = r[a];
+            y = r[a + 1];
+            switch (code[pc]) {
+                case ADD:
+                    r[d] = x + r[b];
+                    r[d + 1] = y + r[b + 1];
+                    break;
+                case SUB:
+                    r[d] = x - r[b];
+                    r[d + 1] = y - r[b + 1];
+                    break;
+                case MUL:
+                    u = r[b];
+                    v = r[b + 1];
+                    r[d] = x * u - y * v;
+                    r[d + 1] = x * v + y * u;
+                    break;
+                case DIV:
+                    u = r[b];
+                    v = r[b + 1];
+                    t = u * u + v * v;
+                    r[d] = (x * u + y * v) / t;
+                    r[d + 1] = (y * u - x * v) / t;
+                    break;
+                case POW:
+                    if (x == 0.0 && y == 0.0) {
+                        r[d] = 0.0;
+                        r[d + 1] = 0.0;
+                    } else {
+                        // exp(b * log(a))
+                        final double lx = 0.5 * Math.log(x * x + y * y);
+                        final double ly = Math.atan2(y, x);
+                        u = r[b];
+                        v = r[b + 1];
+                        t = Math.exp(lx * u - ly * v);
+                        final double phi = lx * v + ly * u;
+                        r[d] = t * Math.cos(phi);
+                        r[d + 1] = t * Math.sin(phi);
+                    }
+                    break;
+                case NEG:
+                    r[d] = -x;
+                    r[d + 1] = -y;
+                    break;
+                case SQR:
+                    r[d] = x * x - y * y;
+                    r[d + 1] = 2.0 * x * y;
+                    break;
+                case SIN:
+                    r[d] = Math.sin(x) * Math.cosh(y);
+                    r[d + 1] = Math.cos(x) * Math.sinh(y);
+                    break;
+                case COS:
+                    r[d] = Math.cos(x) * Math.cosh(y);
+                    r[d + 1] = -Math.sin(x) * Math.sinh(y);
+                    break;
+                case SINH:
+                    r[d] = Math.sinh(x) * Math.cos(y);
+                    r[d + 1] = Math.cosh(x) * Math.sin(y);
+                    break;
+                case COSH:
+                    r[d] = Math.cosh(x) * Math.cos(y);
+                    r[d + 1] = Math.sinh(x) * Math.sin(y);
+                    break;
+                case EXP:
+                    t = Math.exp(x);
+                    r[d] = t * Math.cos(y);
+                    r[d + 1] = t * Math.sin(y);
+                    break;
+                case LOG:
+                    r[d] = 0.5 * Math.log(x * x + y * y);
+                    r[d + 1] = Math.atan2(y, x);
+                    break;
+                case SQRT:
+                    t = Math.sqrt(x * x + y * y);
+                    u = Math.sqrt(0.5 * (t + x));
+                    v = Math.sqrt(0.5 * (t - x));
+                    r[d] = u;
+                    r[d + 1] = y < 0.0 ? -v : v;
+                    break;
+                case CONJ:
+                    r[d] = x;
+                    r[d + 1] = -y;
+                    break;
+                case ABS:
+                    r[d] = Math.abs(x);
+                    r[d + 1] = Math.abs(y);
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * A recursive descent parser which emits instructions while parsing. Each parse method returns the register
+     * holding the value of the parsed expression. Operations on constant registers are executed immediately,
+     * their results are new constant registers.
+     */
+    private static class Compiler {
+        private final String text;
+        private int pos;
+        private int[] code = new int[64];
+        private int codeLength;
+        private double[] values = new double[16];
+        private boolean[] constant = new boolean[8];
+        private int numRegisters;
+
+        private Compiler(String text) {
+            this.text = text.toLowerCase();
+            // Registers Z and C
+            newRegister(false);
+            newRegister(false);
+        }
+
+        private int compile() {
+            int result = parseSum();
+            skipSpace();
+            if (pos < text.length()) {
+                throw error("Unexpected character '" + text.charAt(pos) + "'");
+            }
+            if (constant[result] || result == C) {
+                throw new IllegalArgumentException("Formula must depend on z");
+            }
+            if (result == Z) {
+                // Orbits must not share the register of the iterated value
+                result = emit(ADD, Z, newConstant(0.0, 0.0));
+            }
+            return result;
+        }
+
+        private int parseSum() {
+            int a = parseProduct();
+            while (true) {
+                if (accept('+')) {
+                    a = emit(ADD, a, parseProduct());
+                } else if (accept('-')) {
+                    a = emit(SUB, a, parseProduct());
+                } else {
+                    return a;
+                }
+            }
+        }
+
+        private int parseProduct() {
+            int a = parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    a = emit(MUL, a, parseUnary());
+                } else if (accept('/')) {
+                    a = emit(DIV, a, parseUnary());
+                } else {
+                    return a;
+                }
+            }
+        }
+
+        private int parseUnary() {
+            if (accept('-')) {
+                return emit(NEG, parseUnary(), 0);
+            }
+            if (accept('+')) {
+                return parseUnary();
+            }
+            return parsePower();
+        }
+
+        private int parsePower() {
+            final int a = parsePrimary();
+            if (accept('^')) {
+                // Right-associative
+                final int b = parseUnary();
+                if (constant[b] && values[2 * b + 1] == 0.0) {
+                    final double exponent = values[2 * b];
+                    if (exponent == Math.rint(exponent) && Math.abs(exponent) <= 64) {
+                        return emitIntegerPower(a, (int) exponent);
+                    }
+                }
+                return emit(POW, a, b);
+            }
+            return a;
+        }
+
+        private int parsePrimary() {
+            skipSpace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end of formula");
+            }
+            final char ch = text.charAt(pos);
+            if (accept('(')) {
+                final int a = parseSum();
+                expect(')');
+                return a;
+            }
+            if (Character.isDigit(ch) || ch == '.') {
+                final int a = newConstant(parseNumber(), 0.0);
+                skipSpace();
+                if (pos < text.length() && (Character.isLetter(text.charAt(pos)) || text.charAt(pos) == '(')) {
+                    // Implicit multiplication, e.g. "2i" or "3z^2"
+                    return emit(MUL, a, parsePower());
+                }
+                return a;
+            }
+            if (Character.isLetter(ch)) {
+                final String name = parseName();
+                if (name.equals("z")) {
+                    return Z;
+                } else if (name.equals("c")) {
+                    return C;
+                } else if (name.equals("i")) {
+                    return newConstant(0.0, 1.0);
+                } else if (name.equals("pi")) {
+                    return newConstant(Math.PI, 0.0);
+                }
+                for (int i = 0; i < FUNCTION_NAMES.length; i++) {
+                    if (name.equals(FUNCTION_NAMES[i])) {
+                        expect('(');
+                        final int a = parseSum();
+                        expect(')');
+                        return emit(FUNCTION_OPS[i], a, 0);
+                    }
+                }
+                pos -= name.length();
+                throw error("Unknown name '" + name + "'");
+            }
+            throw error("Unexpected character '" + ch + "'");
+        }
+
+        private double parseNumber() {
+            final int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("Invalid number");
+            }
+        }
+
+        private String parseName() {
+            final int start = pos;
+            while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private int emitIntegerPower(int a, int n) {
+            if (n == 0) {
+                return newConstant(1.0, 0.0);
+            }
+            if (n < 0) {
+                return emit(DIV, newConstant(1.0, 0.0), emitIntegerPower(a, -n));
+            }
+            // Square-and-multiply
+            int result = -1;
+            int square = a;
+            while (true) {
+                if ((n & 1) != 0) {
+                    result = result < 0 ? square : emit(MUL, result, square);
+                }
+                n >>= 1;
+                if (n == 0) {
+                    return result;
+                }
+                square = emit(SQR, square, 0);
+            }
+        }
+
+        private int emit(int op, int a, int b) {
+            final boolean unary = op >= NEG;
+            final int d = newRegister(constant[a] && (unary || constant[b]));
+            ensureCodeCapacity(codeLength + 4);
+            code[codeLength] = op;
+            code[codeLength + 1] = d;
+            code[codeLength + 2] = a;
+            code[codeLength + 3] = b;
+            if (constant[d]) {
+                // Execute immediately and drop the instruction
+                execute(code, codeLength, codeLength + 4, values);
+            } else {
+                codeLength += 4;
+            }
+            return d;
+        }
+
+        private int newConstant(double x, double y) {
+            final int d = newRegister(true);
+            values[2 * d] = x;
+            values[2 * d + 1] = y;
+            return d;
+        }
+
+        private int newRegister(boolean isConstant) {
+            final int d = numRegisters++;
+            if (numRegisters > constant.length) {
+                constant = Arrays.copyOf(constant, 2 * numRegisters);
+                values = Arrays.copyOf(values, 4 * numRegisters);
+            }
+            constant[d] = isConstant;
+            return d;
+        }
+
+        private void ensureCodeCapacity(int capacity) {
+            if (capacity > code.length) {
+                code = Arrays.copyOf(code, 2 * capacity);
+            }
+        }
+
+        private boolean accept(char ch) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == ch) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char ch) {
+            if (!accept(ch)) {
+                throw error("'" + ch + "' expected");
+            }
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1));
+        }
+    }
+}
@@ -19,12 +19,162 @@
 
 package nf.frex.core;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+
 /**
  * @author Norman Fomferra
  */
 public abstract class Fractal {
 
     public static final Fractal MANDELBROT = new Fractal(new Region(-0.5, 0.0, 1.2), 100, 100.0) {
+        /**
+         * Tests whether the point lies within the main cardioid or the period-2 bulb.
+         */
+        @Override
+        public boolean isKnownInterior(double constX, double constY) {
+            final double yy = constY * constY;
+            final double x1 = constX - 0.25;
+            final double q = x1 * x1 + yy;
+            if (q * (q + x1) <= 0.25 * yy) {
+                return true;
+            }
+            final double x2 = constX + 1.0;
+            return x2 * x2 + yy <= 0.0625;
+        }
+
+        @Override
+        public boolean isPerturbationSupported() {
+            return true;
+        }
+
+        @Override
+        public ReferenceOrbit computeReferenceOrbit(BigDecimal initX, BigDecimal initY,
+                                                    BigDecimal constX, BigDecimal constY,
+                                                    int iterMax, double bailOut,
+                                                    MathContext mathContext) {
+            final double[] orbitX = new double[iterMax + 1];
+            final double[] orbitY = new double[iterMax + 1];
+            final BigDecimal two = new BigDecimal(2);
+            BigDecimal zx = initX;
+            BigDecimal zy = initY;
+            BigDecimal zxx, zyy;
+            double x = zx.doubleValue();
+            double y = zy.doubleValue();
+            orbitX[0] = x;
+            orbitY[0] = y;
+            int n = 0;
+            // Always compute at least one step, so that perturbed orbits can be advanced
+            while (n < iterMax && (n == 0 || x * x + y * y <= bailOut)) {
+                zxx = zx.multiply(zx, mathContext);
+                zyy = zy.multiply(zy, mathContext);
+                zy = two.multiply(zx, mathContext).multiply(zy, mathContext).add(constY, mathContext);
+                zx = zxx.subtract(zyy, mathContext).add(constX, mathContext);
+                n++;
+                x = zx.doubleValue();
+                y = zy.doubleValue();
+                orbitX[n] = x;
+                orbitY[n] = y;
+            }
+            return new ReferenceOrbit(orbitX, orbitY, n + 1, constX.doubleValue(), constY.doubleValue());
+        }
+
+        /**
+         * Iterates the difference {@code d} to the reference orbit {@code Z}: {@code d' = 2 Z d + d^2 + dc}.
+         * Glitches, i.e. loss of precision when the pixel's orbit departs from the reference orbit, are avoided
+         * by rebasing: whenever {@code |Z + d|} gets smaller than {@code |d|}, or when the reference orbit is
+         * exhausted, the difference is re-referenced to the start of the reference orbit.
+         */
+        @Override
+        public int computePerturbedOrbit(ReferenceOrbit referenceOrbit,
+                                         int skippedIterations,
+                                         double deltaX, double deltaY,
+                                         double deltaConstX, double deltaConstY,
+                                         int iterMax, double bailOut,
+                                         double[] orbitX, double[] orbitY) {
+            final double[] refX = referenceOrbit.getOrbitX();
+            final double[] refY = referenceOrbit.getOrbitY();
+            final int refLast = referenceOrbit.getLength() - 1;
+            final double ref0x = refX[0];
+            final double ref0y = refY[0];
+            double dx = deltaX;
+            double dy = deltaY;
+            double zx, zy, rx, ry, t;
+            int m = skippedIterations;
+            for (int iter = skippedIterations; iter < iterMax; iter++) {
+                zx = refX[m] + dx;
+                zy = refY[m] + dy;
+                if (zx * zx + zy * zy > bailOut) {
+                    return iter;
+                }
+                if (m == refLast || (zx - ref0x) * (zx - ref0x) + (zy - ref0y) * (zy - ref0y) < dx * dx + dy * dy) {
+                    dx = zx - ref0x;
+                    dy = zy - ref0y;
+                    m = 0;
+                }
+                rx = refX[m];
+                ry = refY[m];
+                t = 2.0 * (rx * dx - ry * dy) + dx * dx - dy * dy + deltaConstX;
+                dy = 2.0 * (rx * dy + ry * dx + dx * dy) + deltaConstY;
+                dx = t;
+                m++;
+                if (orbitX != null) {
+                    orbitX[iter] = refX[m] + dx;
+                    orbitY[iter] = refY[m] + dy;
+                }
+            }
+            return iterMax;
+        }
+
+        /**
+         * The coefficients follow from inserting the series into {@code d' = 2 Z d + d^2 + dc}:
+         * <pre>
+         *    A' = 2 Z A + 1
+         *    B' = 2 Z B + A^2
+         *    C' = 2 Z C + 2 A B
+         * </pre>
+         * Iterations are skipped as long as the cubic term is negligible compared to the linear one and
+         * the difference is still small compared to the reference orbit, so that no pixel can have escaped
+         * or would have been rebased in the meantime.
+         */
+        @Override
+        public SeriesApproximation computeSeriesApproximation(ReferenceOrbit referenceOrbit,
+                                                              double maxDeltaConst,
+                                                              int iterMax) {
+            final double[] refX = referenceOrbit.getOrbitX();
+            final double[] refY = referenceOrbit.getOrbitY();
+            final int n = Math.min(iterMax, referenceOrbit.getLength() - 1);
+            final double d = maxDeltaConst;
+            final double d2 = d * d;
+            double ax = 0.0, ay = 0.0, bx = 0.0, by = 0.0, cx = 0.0, cy = 0.0;
+            double ax1, ay1, bx1, by1, cx1, cy1, rx, ry;
+            int skip = 0;
+            while (skip < n) {
+                rx = refX[skip];
+                ry = refY[skip];
+                ax1 = 2.0 * (rx * ax - ry * ay) + 1.0;
+                ay1 = 2.0 * (rx * ay + ry * ax);
+                bx1 = 2.0 * (rx * bx - ry * by) + ax * ax - ay * ay;
+                by1 = 2.0 * (rx * by + ry * bx) + 2.0 * ax * ay;
+                cx1 = 2.0 * (rx * cx - ry * cy) + 2.0 * (ax * bx - ay * by);
+                cy1 = 2.0 * (rx * cy + ry * cx) + 2.0 * (ax * by + ay * bx);
+                final double a = Math.hypot(ax1, ay1);
+                final double c = Math.hypot(cx1, cy1);
+                final double r = Math.hypot(refX[skip + 1], refY[skip + 1]);
+                if (!(c * d2 <= SERIES_TOLERANCE * a && a * d <= SERIES_DELTA_RATIO * r)) {
+                    break;
+                }
+                ax = ax1;
+                ay = ay1;
+                bx = bx1;
+                by = by1;
+                cx = cx1;
+                cy = cy1;
+                skip++;
+            }
+            return new SeriesApproximation(skip, ax, ay, bx, by, cx, cy);
+        }
+
         @Override
         public int computeOrbit(double initX, double initY,
                                 double constX, double constY,
@@ -46,6 +196,194 @@ public abstract class Fractal {
             }
             return iterMax;
         }
+
+        @Override
+        public int computeIterations(double initX, double initY,
+                                     double constX, double constY,
+                                     int iterMax, double bailOut) {
+            double zx = initX;
+            double zy = initY;
+            double zxx, zyy;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zy = 2.0 * zx * zy + constY;
+                zx = zxx - zyy + constX;
+            }
+            return iterMax;
+        }
+
+        @Override
+        public int computeOrbit(double initX, double initY,
+                                double constX, double constY,
+                                int iterMax, double bailOut,
+                                OrbitAccumulator accumulator) {
+            double zx = initX;
+            double zy = initY;
+            double zxx, zyy;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zy = 2.0 * zx * zy + constY;
+                zx = zxx - zyy + constX;
+                accumulator.accumulate(zx, zy);
+            }
+            return iterMax;
+        }
+
+        @Override
+        public int computeIterations(double initX, double initY,
+                                     double constX, double constY,
+                                     int iterMax, double bailOut,
+                                     double periodTolerance) {
+            double zx = initX;
+            double zy = initY;
+            double zxx, zyy;
+            double px = zx, py = zy;
+            int periodLength = 1, periodIter = 0;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zy = 2.0 * zx * zy + constY;
+                zx = zxx - zyy + constX;
+                if (Math.abs(zx - px) < periodTolerance && Math.abs(zy - py) < periodTolerance) {
+                    return iterMax;
+                }
+                if (++periodIter == periodLength) {
+                    periodIter = 0;
+                    periodLength *= 2;
+                    px = zx;
+                    py = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isSmoothingSupported() {
+            return true;
+        }
+
+        @Override
+        public double computeSmoothIterations(double initX, double initY,
+                                              double constX, double constY,
+                                              int iterMax, double bailOut,
+                                              double periodTolerance) {
+            double zx = initX;
+            double zy = initY;
+            double zxx, zyy;
+            double px = zx, py = zy;
+            int periodLength = 1, periodIter = 0;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return getSmoothIterations(iter, zxx + zyy, bailOut);
+                }
+                zy = 2.0 * zx * zy + constY;
+                zx = zxx - zyy + constX;
+                if (Math.abs(zx - px) < periodTolerance && Math.abs(zy - py) < periodTolerance) {
+                    return iterMax;
+                }
+                if (++periodIter == periodLength) {
+                    periodIter = 0;
+                    periodLength *= 2;
+                    px = zx;
+                    py = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isFloatSupported() {
+            return true;
+        }
+
+        @Override
+        public int computeFloatOrbit(float initX, float initY,
+                                     float constX, float constY,
+                                     int iterMax, float bailOut,
+                                     double[] orbitX, double[] orbitY) {
+            float zx = initX;
+            float zy = initY;
+            float zxx, zyy;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zy = 2.0F * zx * zy + constY;
+                zx = zxx - zyy + constX;
+                if (orbitX != null) {
+                    orbitX[iter] = zx;
+                    orbitY[iter] = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isDoubleDoubleSupported() {
+            return true;
+        }
+
+        @Override
+        public int computeDoubleDoubleOrbit(double initXHi, double initXLo, double initYHi, double initYLo,
+                                            double constXHi, double constXLo, double constYHi, double constYLo,
+                                            int iterMax, double bailOut,
+                                            double[] orbitX, double[] orbitY) {
+            double zxh = initXHi, zxl = initXLo;
+            double zyh = initYHi, zyl = initYLo;
+            double zxxh, zxxl, zyyh, zyyl, zxyh, zxyl, th, tl;
+            double p, s, e;
+            for (int iter = 0; iter < iterMax; iter++) {
+                p = zxh * zxh;
+                e = DoubleDouble.productError(zxh, zxh, p) + 2.0 * zxh * zxl;
+                zxxh = p + e;
+                zxxl = e - (zxxh - p);
+                p = zyh * zyh;
+                e = DoubleDouble.productError(zyh, zyh, p) + 2.0 * zyh * zyl;
+                zyyh = p + e;
+                zyyl = e - (zyyh - p);
+                if (zxxh + zyyh > bailOut) {
+                    return iter;
+                }
+                p = zxh * zyh;
+                e = DoubleDouble.productError(zxh, zyh, p) + (zxh * zyl + zxl * zyh);
+                zxyh = p + e;
+                zxyl = e - (zxyh - p);
+                // zy = 2.0 * zx * zy + constY
+                s = 2.0 * zxyh + constYHi;
+                e = DoubleDouble.sumError(2.0 * zxyh, constYHi, s) + (2.0 * zxyl + constYLo);
+                zyh = s + e;
+                zyl = e - (zyh - s);
+                // zx = zxx - zyy + constX
+                s = zxxh - zyyh;
+                e = DoubleDouble.sumError(zxxh, -zyyh, s) + (zxxl - zyyl);
+                th = s + e;
+                tl = e - (th - s);
+                s = th + constXHi;
+                e = DoubleDouble.sumError(th, constXHi, s) + (tl + constXLo);
+                zxh = s + e;
+                zxl = e - (zxh - s);
+                if (orbitX != null) {
+                    orbitX[iter] = zxh;
+                    orbitY[iter] = zyh;
+                }
+            }
+            return iterMax;
+        }
     };
 
     public static final Fractal BURNING_SHIP = new Fractal(new Region(-0.5, 0.0, 1.2), 100, 100.0) {
@@ -78,6 +416,239 @@ public abstract class Fractal {
             }
             return iterMax;
         }
+
+        @Override
+        public int computeIterations(double initX, double initY,
+                                     double constX, double constY,
+                                     int iterMax, double bailOut) {
+            initY *= -1.0;
+            constY *= -1.0;
+
+            double zx = initX;
+            double zy = initY;
+            double zxy, zxx, zyy;
+
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zxy = zx * zy;
+                if (zxy < 0.0) {
+                    zxy *= -1.0;
+                }
+                zy = 2.0 * zxy + constY;
+                zx = zxx - zyy + constX;
+            }
+            return iterMax;
+        }
+
+        @Override
+        public int computeOrbit(double initX, double initY,
+                                double constX, double constY,
+                                int iterMax, double bailOut,
+                                OrbitAccumulator accumulator) {
+            initY *= -1.0;
+            constY *= -1.0;
+
+            double zx = initX;
+            double zy = initY;
+            double zxy, zxx, zyy;
+
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zxy = zx * zy;
+                if (zxy < 0.0) {
+                    zxy *= -1.0;
+                }
+                zy = 2.0 * zxy + constY;
+                zx = zxx - zyy + constX;
+                accumulator.accumulate(zx, zy);
+            }
+            return iterMax;
+        }
+
+        @Override
+        public int computeIterations(double initX, double initY,
+                                     double constX, double constY,
+                                     int iterMax, double bailOut,
+                                     double periodTolerance) {
+            initY *= -1.0;
+            constY *= -1.0;
+
+            double zx = initX;
+            double zy = initY;
+            double zxy, zxx, zyy;
+            double px = zx, py = zy;
+            int periodLength = 1, periodIter = 0;
+
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zxy = zx * zy;
+                if (zxy < 0.0) {
+                    zxy *= -1.0;
+                }
+                zy = 2.0 * zxy + constY;
+                zx = zxx - zyy + constX;
+                if (Math.abs(zx - px) < periodTolerance && Math.abs(zy - py) < periodTolerance) {
+                    return iterMax;
+                }
+                if (++periodIter == periodLength) {
+                    periodIter = 0;
+                    periodLength *= 2;
+                    px = zx;
+                    py = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isSmoothingSupported() {
+            return true;
+        }
+
+        @Override
+        public double computeSmoothIterations(double initX, double initY,
+                                              double constX, double constY,
+                                              int iterMax, double bailOut,
+                                              double periodTolerance) {
+            initY *= -1.0;
+            constY *= -1.0;
+
+            double zx = initX;
+            double zy = initY;
+            double zxy, zxx, zyy;
+            double px = zx, py = zy;
+            int periodLength = 1, periodIter = 0;
+
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return getSmoothIterations(iter, zxx + zyy, bailOut);
+                }
+                zxy = zx * zy;
+                if (zxy < 0.0) {
+                    zxy *= -1.0;
+                }
+                zy = 2.0 * zxy + constY;
+                zx = zxx - zyy + constX;
+                if (Math.abs(zx - px) < periodTolerance && Math.abs(zy - py) < periodTolerance) {
+                    return iterMax;
+                }
+                if (++periodIter == periodLength) {
+                    periodIter = 0;
+                    periodLength *= 2;
+                    px = zx;
+                    py = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isFloatSupported() {
+            return true;
+        }
+
+        @Override
+        public int computeFloatOrbit(float initX, float initY,
+                                     float constX, float constY,
+                                     int iterMax, float bailOut,
+                                     double[] orbitX, double[] orbitY) {
+            initY *= -1.0F;
+            constY *= -1.0F;
+
+            float zx = initX;
+            float zy = initY;
+            float zxy, zxx, zyy;
+            for (int iter = 0; iter < iterMax; iter++) {
+                zxx = zx * zx;
+                zyy = zy * zy;
+                if (zxx + zyy > bailOut) {
+                    return iter;
+                }
+                zxy = zx * zy;
+                if (zxy < 0.0F) {
+                    zxy *= -1.0F;
+                }
+                zy = 2.0F * zxy + constY;
+                zx = zxx - zyy + constX;
+                if (orbitX != null) {
+                    orbitX[iter] = zx;
+                    orbitY[iter] = zy;
+                }
+            }
+            return iterMax;
+        }
+
+        @Override
+        public boolean isDoubleDoubleSupported() {
+            return true;
+        }
+
+        @Override
+        public int computeDoubleDoubleOrbit(double initXHi, double initXLo, double initYHi, double initYLo,
+                                            double constXHi, double constXLo, double constYHi, double constYLo,
+                                            int iterMax, double bailOut,
+                                            double[] orbitX, double[] orbitY) {
+            double zxh = initXHi, zxl = initXLo;
+            double zyh = -initYHi, zyl = -initYLo;
+            constYHi *= -1.0;
+            constYLo *= -1.0;
+            double zxxh, zxxl, zyyh, zyyl, zxyh, zxyl, th, tl;
+            double p, s, e;
+            for (int iter = 0; iter < iterMax; iter++) {
+                p = zxh * zxh;
+                e = DoubleDouble.productError(zxh, zxh, p) + 2.0 * zxh * zxl;
+                zxxh = p + e;
+                zxxl = e - (zxxh - p);
+                p = zyh * zyh;
+                e = DoubleDouble.productError(zyh, zyh, p) + 2.0 * zyh * zyl;
+                zyyh = p + e;
+                zyyl = e - (zyyh - p);
+                if (zxxh + zyyh > bailOut) {
+                    return iter;
+                }
+                p = zxh * zyh;
+                e = DoubleDouble.productError(zxh, zyh, p) + (zxh * zyl + zxl * zyh);
+                zxyh = p + e;
+                zxyl = e - (zxyh - p);
+                if (zxyh < 0.0) {
+                    zxyh *= -1.0;
+                    zxyl *= -1.0;
+                }
+                // zy = 2.0 * |zx * zy| + constY
+                s = 2.0 * zxyh + constYHi;
+                e = DoubleDouble.sumError(2.0 * zxyh, constYHi, s) + (2.0 * zxyl + constYLo);
+                zyh = s + e;
+                zyl = e - (zyh - s);
+                // zx = zxx - zyy + constX
+                s = zxxh - zyyh;
+                e = DoubleDouble.sumError(zxxh, -zyyh, s) + (zxxl - zyyl);
+                th = s + e;
+                tl = e - (th - s);
+                s = th + constXHi;
+                e = DoubleDouble.sumError(th, constXHi, s) + (tl + constXLo);
+                zxh = s + e;
+                zxl = e - (zxh - s);
+                if (orbitX != null) {
+                    orbitX[iter] = zxh;
+                    orbitY[iter] = zyh;
+                }
+            }
+            return iterMax;
+        }
     };
 
     public static final Fractal ODD_ONION = new Fractal(new Region(-0.5, 0.0, 1.2), 150, 100.0) {
@@ -109,6 +680,72 @@ public abstract class Fractal {
             }
             return iterMax;
         }
+
+        @Override
+        public boolean isSmoothingSupported() {
+            return true;
+        }
+
+        @Override
+        public boolean isDoubleDoubleSupported() {
+            return true;
+        }
+
+        @Override
+        public int computeDoubleDoubleOrbit(double initXHi, double initXLo, double initYHi, double initYLo,
+                                            double constXHi, double constXLo, double constYHi, double constYLo,
+                                            int iterMax, double bailOut,
+                                            double[] orbitX, double[] orbitY) {
+            double zxh = initXHi, zxl = initXLo;
+            double zyh = initYHi, zyl = initYLo;
+            double zxxh, zxxl, zyyh, zyyl, zxyh, zxyl, th, tl;
+            double p, s, e;
+            for (int iter = 0; iter < iterMax; iter++) {
+                p = zxh * zxh;
+                e = DoubleDouble.productError(zxh, zxh, p) + 2.0 * zxh * zxl;
+                zxxh = p + e;
+                zxxl = e - (zxxh - p);
+                p = zyh * zyh;
+                e = DoubleDouble.productError(zyh, zyh, p) + 2.0 * zyh * zyl;
+                zyyh = p + e;
+                zyyl = e - (zyyh - p);
+                if (zxxh + zyyh > bailOut) {
+                    return iter;
+                }
+                p = zxh * zyh;
+                e = DoubleDouble.productError(zxh, zyh, p) + (zxh * zyl + zxl * zyh);
+                zxyh = p + e;
+                zxyl = e - (zxyh - p);
+                // zy = 2.0 * zx * zy + constY
+                s = 2.0 * zxyh + constYHi;
+                e = DoubleDouble.sumError(2.0 * zxyh, constYHi, s) + (2.0 * zxyl + constYLo);
+                zyh = s + e;
+                zyl = e - (zyh - s);
+                // zx = zxx - zyy + constX
+                s = zxxh - zyyh;
+                e = DoubleDouble.sumError(zxxh, -zyyh, s) + (zxxl - zyyl);
+                th = s + e;
+                tl = e - (th - s);
+                s = th + constXHi;
+                e = DoubleDouble.sumError(th, constXHi, s) + (tl + constXLo);
+                zxh = s + e;
+                zxl = e - (zxh - s);
+                if (orbitX != null) {
+                    orbitX[iter] = zxh;
+                    orbitY[iter] = zyh;
+                }
+                // This is the term that "disturbs" the Mandelbrot set
+                if (zyh < zxh || zyh == zxh && zyl < zxl) {
+                    th = zyh;
+                    tl = zyl;
+                    zyh = zxh;
+                    zyl = zxl;
+                    zxh = th;
+                    zxl = tl;
+                }
+            }
+            return iterMax;
+        }
     };
 
     /**
@@ -217,6 +854,28 @@ public abstract class Fractal {
         }
     };
 
+    /**
+     * Representative of user-defined formula fractals, the actual formula is given by
+     * {@link GeneratorConfig#getFractalFormula()}.
+     */
+    public static final Fractal FORMULA = new FormulaFractal(FormulaFractal.DEFAULT_FORMULA);
+
+    /**
+     * Maximum ratio of the series' cubic term to its linear term.
+     */
+    static final double SERIES_TOLERANCE = 1.0E-12;
+    /**
+     * Maximum ratio of the series' linear term to the reference orbit.
+     */
+    static final double SERIES_DELTA_RATIO = 1.0E-3;
+
+    private static final double INV_LOG_2 = 1.0 / Math.log(2.0);
+
+    /**
+     * Orbit arrays used by the default implementations which delegate to the array-based {@code computeOrbit}.
+     */
+    private static final ThreadLocal<double[][]> ORBIT_BUFFER = new ThreadLocal<double[][]>();
+
     private final Region defaultRegion;
     private final int defaultIterMax;
     private final double defaultBailOut;
@@ -232,6 +891,295 @@ public abstract class Fractal {
                                      int iterMax, double bailOut,
                                      double[] orbitX, double[] orbitY);
 
+    /**
+     * Computes the orbit like {@link #computeOrbit(double, double, double, double, int, double, double[], double[])},
+     * but passes each orbit point to the given accumulator instead of storing it. Decorations can thereby be
+     * computed while iterating, without the need for orbit arrays of size {@code iterMax}.
+     * The default implementation records the orbit in a per-thread buffer and passes the recorded points on.
+     *
+     * @param accumulator Receives the orbit points in the order they are computed
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computeOrbit(double initX, double initY,
+                            double constX, double constY,
+                            int iterMax, double bailOut,
+                            OrbitAccumulator accumulator) {
+        final double[][] orbit = getOrbitBuffer(iterMax);
+        final double[] orbitX = orbit[0];
+        final double[] orbitY = orbit[1];
+        final int n = computeOrbit(initX, initY, constX, constY, iterMax, bailOut, orbitX, orbitY);
+        for (int i = 0; i < n; i++) {
+            accumulator.accumulate(orbitX[i], orbitY[i]);
+        }
+        return n;
+    }
+
+    /**
+     * Computes the number of iterations like {@link #computeOrbit(double, double, double, double, int, double, double[], double[])},
+     * but without recording the orbit. Used for non-decorated fractals, which only need the number of iterations.
+     * The default implementation records the orbit in a per-thread buffer, subclasses should override it
+     * with a kernel that keeps the orbit in local variables.
+     *
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computeIterations(double initX, double initY,
+                                 double constX, double constY,
+                                 int iterMax, double bailOut) {
+        final double[][] orbit = getOrbitBuffer(iterMax);
+        return computeOrbit(initX, initY, constX, constY, iterMax, bailOut, orbit[0], orbit[1]);
+    }
+
+    /**
+     * Computes the number of iterations like {@link #computeIterations(double, double, double, double, int, double)},
+     * but uses Brent's cycle detection to stop as soon as the orbit has become periodic. The current orbit point
+     * is compared with a saved one, which is replaced after intervals of doubling length. If both points
+     * are closer than {@code periodTolerance} in each coordinate, the orbit is considered bounded and
+     * {@code iterMax} is returned.
+     * The default implementation performs no periodicity check.
+     *
+     * @param periodTolerance The tolerance used to compare orbit points, should be small compared to the pixel size.
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped or was found to be periodic.
+     */
+    public int computeIterations(double initX, double initY,
+                                 double constX, double constY,
+                                 int iterMax, double bailOut,
+                                 double periodTolerance) {
+        return computeIterations(initX, initY, constX, constY, iterMax, bailOut);
+    }
+
+    /**
+     * Tests whether orbits escape like those of quadratic polynomials, so that normalised iteration counts
+     * can be computed by {@link #computeSmoothIterations} and {@link #getSmoothIterations}.
+     * The default implementation returns {@code false}.
+     *
+     * @return {@code true}, if normalised iteration counts are supported.
+     */
+    public boolean isSmoothingSupported() {
+        return false;
+    }
+
+    /**
+     * Computes the number of iterations like {@link #computeIterations(double, double, double, double, int, double, double)},
+     * but returns the normalised iteration count of escaped orbits, which is computed from the final orbit point
+     * by {@link #getSmoothIterations}. Only called if {@link #isSmoothingSupported()} returns {@code true}.
+     * The default implementation records the orbit in a per-thread buffer and performs no periodicity check.
+     *
+     * @return The normalised iteration count, or {@code iterMax} if the orbit has not escaped or was found to be periodic.
+     */
+    public double computeSmoothIterations(double initX, double initY,
+                                          double constX, double constY,
+                                          int iterMax, double bailOut,
+                                          double periodTolerance) {
+        final double[][] orbit = getOrbitBuffer(iterMax);
+        final int n = computeOrbit(initX, initY, constX, constY, iterMax, bailOut, orbit[0], orbit[1]);
+        if (n > 0 && n < iterMax) {
+            final double x = orbit[0][n - 1];
+            final double y = orbit[1][n - 1];
+            return getSmoothIterations(n, x * x + y * y, bailOut);
+        }
+        return n;
+    }
+
+    /**
+     * Computes the normalised ("smooth") iteration count {@code iter + 1 - log2(log(r2) / log(bailOut))}
+     * of a quadratic orbit which escaped after {@code iter} iterations. Unlike the number of iterations,
+     * it varies continuously over the image, so that colour gradients show no bands.
+     *
+     * @param iter    The number of iterations
+     * @param r2      The squared absolute value of the escaped orbit point
+     * @param bailOut The bail-out value, must be greater than one
+     * @return The normalised iteration count in the range {@code iter} to {@code iter + 1}.
+     */
+    public static double getSmoothIterations(int iter, double r2, double bailOut) {
+        final double t = Math.log(Math.log(r2) / Math.log(bailOut)) * INV_LOG_2;
+        return iter + 1 - (t > 0.0 ? (t < 1.0 ? t : 1.0) : 0.0);
+    }
+
+    /**
+     * Tests whether the orbit of a point is known to be bounded without iterating it, e.g. because the point
+     * lies within an area of the set whose shape is known analytically. The test is only used for
+     * non-decorated, non-"Julia-Set" mode fractals, that is for orbits starting at zero.
+     * The default implementation returns {@code false}.
+     *
+     * @param constX The X-coordinate of the point
+     * @param constY The Y-coordinate of the point
+     * @return {@code true}, if the point is known to be an interior point of the set,
+     *         so that {@link #computeOrbit} would return {@code iterMax}.
+     */
+    public boolean isKnownInterior(double constX, double constY) {
+        return false;
+    }
+
+    /**
+     * Tests whether this fractal supports deep zooms by perturbation, that is whether it implements
+     * {@link #computeReferenceOrbit} and {@link #computePerturbedOrbit}. The default implementation returns {@code false}.
+     *
+     * @return {@code true}, if perturbation is supported.
+     */
+    public boolean isPerturbationSupported() {
+        return false;
+    }
+
+    /**
+     * Computes a reference orbit with arbitrary precision. Only called if {@link #isPerturbationSupported()}
+     * returns {@code true}.
+     * The default implementation computes the orbit with double precision by {@link #computeOrbit}.
+     *
+     * @param mathContext The math context which determines the precision used
+     * @return The reference orbit, which contains at least two points.
+     */
+    public ReferenceOrbit computeReferenceOrbit(BigDecimal initX, BigDecimal initY,
+                                                BigDecimal constX, BigDecimal constY,
+                                                int iterMax, double bailOut,
+                                                MathContext mathContext) {
+        final double x0 = initX.doubleValue();
+        final double y0 = initY.doubleValue();
+        final double cx = constX.doubleValue();
+        final double cy = constY.doubleValue();
+        final double[] orbitX = new double[iterMax + 1];
+        final double[] orbitY = new double[iterMax + 1];
+        int n = computeOrbit(x0, y0, cx, cy, iterMax, bailOut, orbitX, orbitY);
+        if (n == 0) {
+            // Always compute at least one step, so that perturbed orbits can be advanced
+            n = computeOrbit(x0, y0, cx, cy, 1, Double.POSITIVE_INFINITY, orbitX, orbitY);
+        }
+        System.arraycopy(orbitX, 0, orbitX, 1, n);
+        System.arraycopy(orbitY, 0, orbitY, 1, n);
+        orbitX[0] = x0;
+        orbitY[0] = y0;
+        return new ReferenceOrbit(orbitX, orbitY, n + 1, cx, cy);
+    }
+
+    /**
+     * Computes the orbit of a point given by its offsets from the reference orbit's initial point and constant.
+     * Only called if {@link #isPerturbationSupported()} returns {@code true}.
+     *
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computePerturbedOrbit(ReferenceOrbit referenceOrbit,
+                                     double deltaInitX, double deltaInitY,
+                                     double deltaConstX, double deltaConstY,
+                                     int iterMax, double bailOut,
+                                     double[] orbitX, double[] orbitY) {
+        return computePerturbedOrbit(referenceOrbit, 0, deltaInitX, deltaInitY, deltaConstX, deltaConstY,
+                                     iterMax, bailOut, orbitX, orbitY);
+    }
+
+    /**
+     * Computes the orbit of a point like {@link #computePerturbedOrbit(ReferenceOrbit, double, double, double, double, int, double, double[], double[])},
+     * but starts after the given number of iterations with the given offset from the reference orbit. The orbit
+     * points of the skipped iterations are not recorded.
+     * Only called if {@link #isPerturbationSupported()} returns {@code true}.
+     * The default implementation continues the orbit from the reference orbit's point with double precision.
+     * <p/>
+     * The orbit arrays may be {@code null}, if the orbit need not be recorded, e.g. for non-decorated fractals.
+     *
+     * @param skippedIterations The number of skipped iterations, e.g. as returned by a {@link SeriesApproximation}
+     * @param deltaX            The X-offset from the reference orbit after the skipped iterations
+     * @param deltaY            The Y-offset from the reference orbit after the skipped iterations
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computePerturbedOrbit(ReferenceOrbit referenceOrbit,
+                                     int skippedIterations,
+                                     double deltaX, double deltaY,
+                                     double deltaConstX, double deltaConstY,
+                                     int iterMax, double bailOut,
+                                     double[] orbitX, double[] orbitY) {
+        // Continue the point's own orbit with double precision, no precision is gained over computeOrbit then
+        final double x = referenceOrbit.getOrbitX()[skippedIterations] + deltaX;
+        final double y = referenceOrbit.getOrbitY()[skippedIterations] + deltaY;
+        final double cx = referenceOrbit.getConstX() + deltaConstX;
+        final double cy = referenceOrbit.getConstY() + deltaConstY;
+        final int n;
+        if (orbitX != null) {
+            n = computeOrbit(x, y, cx, cy, iterMax - skippedIterations, bailOut, orbitX, orbitY);
+            System.arraycopy(orbitX, 0, orbitX, skippedIterations, n);
+            System.arraycopy(orbitY, 0, orbitY, skippedIterations, n);
+        } else {
+            n = computeIterations(x, y, cx, cy, iterMax - skippedIterations, bailOut);
+        }
+        return skippedIterations + n;
+    }
+
+    /**
+     * Computes a series approximation of perturbed orbits which start at the reference orbit's initial point,
+     * valid for all constants whose offset from the reference orbit's constant is at most {@code maxDeltaConst}.
+     * The default implementation returns {@code null}, which means that series approximation is not supported.
+     *
+     * @param maxDeltaConst The maximum absolute offset of the constants from the reference orbit's constant
+     * @return The series approximation, or {@code null}.
+     */
+    public SeriesApproximation computeSeriesApproximation(ReferenceOrbit referenceOrbit,
+                                                          double maxDeltaConst,
+                                                          int iterMax) {
+        return null;
+    }
+
+    /**
+     * Tests whether this fractal supports single precision, that is whether it implements
+     * {@link #computeFloatOrbit}. The default implementation returns {@code false}.
+     *
+     * @return {@code true}, if single precision is supported.
+     */
+    public boolean isFloatSupported() {
+        return false;
+    }
+
+    /**
+     * Computes the orbit like {@link #computeOrbit(double, double, double, double, int, double, double[], double[])},
+     * but with single precision, which is sufficient for shallow zooms.
+     * Only called if {@link #isFloatSupported()} returns {@code true}.
+     * The default implementation iterates with double precision.
+     * <p/>
+     * The orbit arrays may be {@code null}, if the orbit need not be recorded, e.g. for non-decorated fractals.
+     *
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computeFloatOrbit(float initX, float initY,
+                                 float constX, float constY,
+                                 int iterMax, float bailOut,
+                                 double[] orbitX, double[] orbitY) {
+        if (orbitX != null) {
+            return computeOrbit(initX, initY, constX, constY, iterMax, bailOut, orbitX, orbitY);
+        } else {
+            return computeIterations(initX, initY, constX, constY, iterMax, bailOut);
+        }
+    }
+
+    /**
+     * Tests whether this fractal supports double-double precision, that is whether it implements
+     * {@link #computeDoubleDoubleOrbit}. The default implementation returns {@code false}.
+     *
+     * @return {@code true}, if double-double precision is supported.
+     */
+    public boolean isDoubleDoubleSupported() {
+        return false;
+    }
+
+    /**
+     * Computes the orbit like {@link #computeOrbit(double, double, double, double, int, double, double[], double[])},
+     * but with double-double precision (see {@link DoubleDouble}). The initial point and the constant are given
+     * by their {@code hi} and {@code lo} parts, the orbit points are recorded with double precision.
+     * Only called if {@link #isDoubleDoubleSupported()} returns {@code true}.
+     * The default implementation rounds the initial point and the constant and iterates with double precision.
+     * <p/>
+     * The orbit arrays may be {@code null}, if the orbit need not be recorded, e.g. for non-decorated fractals.
+     *
+     * @return The number of iterations, or {@code iterMax} if the orbit has not escaped.
+     */
+    public int computeDoubleDoubleOrbit(double initXHi, double initXLo, double initYHi, double initYLo,
+                                        double constXHi, double constXLo, double constYHi, double constYLo,
+                                        int iterMax, double bailOut,
+                                        double[] orbitX, double[] orbitY) {
+        if (orbitX != null) {
+            return computeOrbit(initXHi + initXLo, initYHi + initYLo, constXHi + constXLo, constYHi + constYLo,
+                                iterMax, bailOut, orbitX, orbitY);
+        } else {
+            return computeIterations(initXHi + initXLo, initYHi + initYLo, constXHi + constXLo, constYHi + constYLo,
+                                     iterMax, bailOut);
+        }
+    }
+
     public double getDefaultBailOut() {
         return defaultBailOut;
     }
@@ -243,4 +1191,13 @@ public abstract class Fractal {
     public Region getDefaultRegion() {
         return defaultRegion.clone();
     }
+
+    private static double[][] getOrbitBuffer(int iterMax) {
+        double[][] orbit = ORBIT_BUFFER.get();
+        if (orbit == null || orbit[0].length < iterMax) {
+            orbit = new double[][]{new double[iterMax], new double[iterMax]};
+            ORBIT_BUFFER.set(orbit);
+        }
+        return orbit;
+    }
 }
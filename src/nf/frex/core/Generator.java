@@ -19,250 +19,1363 @@
 
 package nf.frex.core;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
+ * Generates fractal images. The image is divided into square tiles which are put into a shared queue.
+ * A number of tasks concurrently pull tiles from the queue until it is empty, so that no task sits idle
+ * while others are still busy with expensive image areas.
+ * <p/>
+ * Tasks are executed by a pool of worker threads owned by the generator. The threads are kept alive between
+ * runs, so that a new run, e.g. after panning or zooming, starts without creating new threads. Each run is
+ * identified by an epoch number, starting a new run or cancelling the current one increments the epoch and
+ * thereby makes all tasks of the previous run terminate after their current line.
+ * <p/>
+ * The arithmetic used for a run is chosen by the pixel size, see {@link Precision}. The first pass of progressive
+ * mode may use single precision for shallow zooms, its pixels are computed again by the final pass.
+ * <p/>
+ * In progressive mode (see {@link GeneratorConfig#isProgressive()}), every tile is computed in several passes.
+ * The first pass computes every 8th pixel in each direction and fills the blocks between them with the
+ * computed colours, subsequent passes halve the distance until all pixels are computed. The queue holds all
+ * tiles of the first pass, followed by all tiles of the second pass and so on, so that a coarse version of
+ * the whole image becomes visible quickly.
+ * <p/>
+ * Within a pass, tiles are ordered by their distance from a focus point, usually the point the user is looking at,
+ * so that the area around it is completed first, or row by row if the image is written while it is computed.
+ * <p/>
+ * Colours are computed from pixel values by a {@link ColorMapper}. If only the colours have to be changed,
+ * a separate colouring pass maps all computed values to colours in parallel bands of lines. After the first
+ * colouring pass of a complete image, its values are quantised (see {@link QuantizedValues}), so that subsequent
+ * colouring passes only need to look up colours in a small table.
+ * <p/>
+ * In histogram mode (see {@link GeneratorConfig#isColorHistogram()}), the last compute task to terminate
+ * starts one task per band of lines, each of which accumulates a {@link Histogram} of its band. The last of them
+ * merges the histograms and starts a colouring pass with colours equalised by the result. The histogram's bins
+ * cover the range of the values, which the compute tasks track while computing, so it is only known when all
+ * values are computed. Until then, colours are equalised by the histogram of the previous image.
+ * Tiles of larger images are not equalised, see {@link #startTile}.
+ *
  * @author Norman Fomferra
  */
 public class Generator {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    /**
+     * Pixel size (relative to the magnitude of the region's center) below which double precision
+     * is not sufficient anymore.
+     */
+    public static final double DOUBLE_PIXEL_SIZE = 1.0E-13;
+    /**
+     * Pixel size (relative to the magnitude of the region's center) above which single precision
+     * is sufficient for previews.
+     */
+    public static final double FLOAT_PIXEL_SIZE = 1.0E-4;
+    /**
+     * Maximum number of iterations for which single precision is used. Rounding errors accumulate with every
+     * iteration, so that orbits computed with more iterations visibly deviate from their double precision
+     * counterparts.
+     */
+    public static final int FLOAT_ITER_MAX = 256;
+    /**
+     * Distance between the pixels computed by the first pass of progressive mode. Must be a power of two.
+     */
+    public static final int PROGRESSIVE_FIRST_STEP = 8;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
     private final GeneratorConfig config;
     private final ProgressListener listener;
-    private Task[] tasks;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger epoch;
+    /**
+     * Incremented whenever a run starts which may change pixel values.
+     */
+    private final AtomicInteger valuesEpoch;
     private int numTasks;
+    private int tileSize;
+    private volatile Statistics statistics;
+    private volatile Run run;
+    /**
+     * The perturbation reference of the last run, reused by the next one if possible.
+     */
+    private PerturbationReference perturbationReference;
 
     public Generator(GeneratorConfig config, int numTasks, final ProgressListener listener) {
         this.config = config;
         this.listener = listener;
-        this.tasks = new Task[numTasks];
         this.numTasks = numTasks;
+        this.tileSize = DEFAULT_TILE_SIZE;
+        this.epoch = new AtomicInteger();
+        this.valuesEpoch = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(numTasks, numTasks,
+                                               KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<Runnable>(),
+                                               new TaskThreadFactory());
+        // Let idle threads die, so that generators which are no longer used don't keep threads alive
+        this.executor.allowCoreThreadTimeOut(true);
     }
 
     public void start(final Image image, boolean colorsOnly) {
-        cancel();
+        start(image, colorsOnly, image.getWidth() / 2, image.getHeight() / 2);
+    }
+
+    /**
+     * Starts a new run which computes tiles in the order of their distance from the given focus point.
+     *
+     * @param image      The image
+     * @param colorsOnly If {@code true}, the colours of all computed pixels are recomputed by a separate colouring
+     *                   pass, only missing pixels are computed.
+     * @param focusX     The X-coordinate of the focus point in image pixels
+     * @param focusY     The Y-coordinate of the focus point in image pixels
+     */
+    public void start(final Image image, boolean colorsOnly, int focusX, int focusY) {
+        start(image, colorsOnly, focusX, focusY, false, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Starts a new run which computes tiles row by row from the top, so that the upper lines of the image are
+     * complete while the lower ones are still being computed, see {@link PngBandWriter}.
+     *
+     * @param image The image
+     */
+    public void startTopDown(Image image) {
+        start(image, false, 0, 0, true, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Starts a new run which computes a tile of a larger image, e.g. of an image too large to be held in memory.
+     * The pixels of the tile get exactly the coordinates of the corresponding pixels of the larger image, so that
+     * tiles can be assembled seamlessly. In histogram mode, the tile is not equalised, since only a histogram of
+     * the larger image would give the right colours. The tiles of a larger image share the reference orbit
+     * and series approximation used for perturbation, unless the configuration is changed in between.
+     *
+     * @param tile        The tile
+     * @param tileX       The X-coordinate of the tile's upper left pixel in the larger image
+     * @param tileY       The Y-coordinate of the tile's upper left pixel in the larger image
+     * @param frameWidth  The width of the larger image
+     * @param frameHeight The height of the larger image
+     */
+    public void startTile(Image tile, int tileX, int tileY, int frameWidth, int frameHeight) {
+        start(tile, false, tile.getWidth() / 2, tile.getHeight() / 2, false, tileX, tileY, frameWidth, frameHeight);
+    }
+
+    private void start(final Image image, boolean colorsOnly, int focusX, int focusY, boolean topDown,
+                       int frameX, int frameY, int frameWidth, int frameHeight) {
+        final int numTasks = this.numTasks;
+        final Fractal fractal = config.getFractal();
+        final Precision precision = getPrecision(fractal, config, frameWidth, frameHeight);
+        final Statistics statistics = new Statistics(precision);
+        final Histogram histogram = image.getHistogram();
+        final Run run = new Run(epoch, epoch.incrementAndGet(),
+                                new TileQueue(image.getWidth(), image.getHeight(), tileSize,
+                                              isProgressive(colorsOnly) ? PROGRESSIVE_FIRST_STEP : 1,
+                                              focusX, focusY, topDown),
+                                numTasks, listener, statistics,
+                                new ColorMapper(config, histogram));
+        run.frameX = frameX;
+        run.frameY = frameY;
+        run.frameWidth = frameWidth;
+        run.frameHeight = frameHeight;
+        if (precision == Precision.PERTURBATION) {
+            // Computing the reference orbit takes long for deep zooms, e.g. the tiles of a large image share it
+            final long configHash = ValueRaster.getConfigHash(config);
+            if (perturbationReference == null
+                    || !perturbationReference.matches(configHash, frameWidth, frameHeight)) {
+                perturbationReference = new PerturbationReference(configHash, frameWidth, frameHeight);
+            }
+            run.perturbationReference = perturbationReference;
+        }
+        this.statistics = statistics;
+        this.run = run;
+
+        if (colorsOnly) {
+            run.quantizedValues = image.getQuantizedValues();
+        } else {
+            // Values are about to change
+            synchronized (image) {
+                valuesEpoch.incrementAndGet();
+                image.setQuantizedValues(null);
+                image.setHistogram(null);
+            }
+        }
 
-        if (numTasks != tasks.length) {
-            tasks = new Task[numTasks];
+        final int currentValuesEpoch = valuesEpoch.get();
+        run.quantizationTask = new Runnable() {
+            @Override
+            public void run() {
+                quantizeValues(image, currentValuesEpoch);
+            }
+        };
+        if (config.isColorHistogram() && frameWidth == image.getWidth() && frameHeight == image.getHeight()) {
+            run.equalizationTask = new Runnable() {
+                @Override
+                public void run() {
+                    equalizeColors(image, run, currentValuesEpoch);
+                }
+            };
         }
 
-        ProgressListenerWrapper listenerWrapper = new ProgressListenerWrapper(listener);
+        listener.onStarted(numTasks);
+        if (colorsOnly) {
+            // Recolour all computed pixels, missing pixels are computed afterwards, if any
+            run.missingPixelsTask = new Runnable() {
+                @Override
+                public void run() {
+                    startTasks(image, run);
+                }
+            };
+            if (run.equalizationTask != null && histogram == null) {
+                // The histogram must be known before the colouring pass
+                executor.execute(run.equalizationTask);
+            } else {
+                startColorTasks(image, run);
+            }
+        } else {
+            startTasks(image, run);
+        }
+    }
+
+    /**
+     * Quantises the values of a complete image, unless already done. Colours are likely to be changed again
+     * after a colouring pass, so this prepares for faster subsequent colouring passes.
+     */
+    private void quantizeValues(Image image, int currentValuesEpoch) {
+        if (image.getQuantizedValues() == null) {
+            final QuantizedValues quantizedValues = QuantizedValues.create(image.getValues());
+            synchronized (image) {
+                // A new run may have started changing the values in the meantime
+                if (valuesEpoch.get() == currentValuesEpoch) {
+                    image.setQuantizedValues(quantizedValues);
+                }
+            }
+        }
+    }
+
+    /**
+     * Equalises colours by the histogram of the image values and starts a colouring pass. If no compute tasks have
+     * run, e.g. if only the colours of restored values have to be changed, the range of the values is determined
+     * by a pass over the bands of lines before.
+     */
+    private void equalizeColors(final Image image, final Run run, final int currentValuesEpoch) {
+        final int numTasks = run.numTasks;
+        if (run.computeTasksDone.get() == numTasks) {
+            startHistogramTasks(image, run, currentValuesEpoch);
+            return;
+        }
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final AtomicInteger rangeTasksDone = new AtomicInteger();
+        for (int i = 0; i < numTasks; i++) {
+            final int taskIndex = i;
+            final int start = i * height / numTasks * width;
+            final int end = (i + 1) * height / numTasks * width;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    float minSample = Float.POSITIVE_INFINITY;
+                    float maxSample = 0.0F;
+                    final float[] values = image.getValues();
+                    for (int j = start; j < end && !run.isCancelled(); j++) {
+                        final float value = values[j];
+                        if (value > 0.0F) {
+                            minSample = Math.min(minSample, value);
+                            maxSample = Math.max(maxSample, value);
+                        }
+                    }
+                    run.minSamples[taskIndex] = minSample;
+                    run.maxSamples[taskIndex] = maxSample;
+                    if (rangeTasksDone.incrementAndGet() == numTasks) {
+                        startHistogramTasks(image, run, currentValuesEpoch);
+                    }
+                }
+            });
+        }
+    }
 
+    /**
+     * Accumulates a histogram per band of lines in parallel. The last task merges them and starts a colouring pass.
+     */
+    private void startHistogramTasks(final Image image, final Run run, final int currentValuesEpoch) {
+        final int numTasks = run.numTasks;
+        float minSample = Float.POSITIVE_INFINITY;
+        float maxSample = 0.0F;
+        for (int i = 0; i < numTasks; i++) {
+            minSample = Math.min(minSample, run.minSamples[i]);
+            maxSample = Math.max(maxSample, run.maxSamples[i]);
+        }
+        final int width = image.getWidth();
         final int height = image.getHeight();
-        final int n = height / tasks.length;
+        final Histogram[] histograms = new Histogram[numTasks];
+        final AtomicInteger histogramTasksDone = new AtomicInteger();
+        for (int i = 0; i < numTasks; i++) {
+            final Histogram histogram = new Histogram(config.getIterMax(), Math.min(minSample, maxSample), maxSample);
+            final int start = i * height / numTasks * width;
+            final int end = (i + 1) * height / numTasks * width;
+            histograms[i] = histogram;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!run.isCancelled()) {
+                        histogram.accumulate(image.getValues(), start, end);
+                    }
+                    if (histogramTasksDone.incrementAndGet() == numTasks) {
+                        for (int j = 1; j < numTasks; j++) {
+                            histograms[0].add(histograms[j]);
+                        }
+                        completeEqualization(image, run, histograms[0], currentValuesEpoch);
+                    }
+                }
+            });
+        }
+    }
 
-        listenerWrapper.onStarted(tasks.length);
-        int y0 = 0;
-        for (int i = 0; i < tasks.length; i++) {
-            int y1 = y0 + n;
-            if (y1 >= height) {
-                y1 = height - 1;
+    private void completeEqualization(Image image, Run run, Histogram histogram, int currentValuesEpoch) {
+        final int numPixels = image.getWidth() * image.getHeight();
+        if (histogram.getCount() == numPixels) {
+            synchronized (image) {
+                // A new run may have started changing the values in the meantime
+                if (valuesEpoch.get() == currentValuesEpoch) {
+                    image.setHistogram(histogram);
+                }
             }
-            Task task = new Task(config, image, i, y0, y1, colorsOnly, listenerWrapper);
-            task.start();
-            tasks[i] = task;
-            y0 = y1 + 1;
+        }
+        run.colorMapper = new ColorMapper(config, histogram);
+        startColorTasks(image, run);
+    }
+
+    private void startColorTasks(Image image, Run run) {
+        final int numTasks = run.numTasks;
+        final int height = image.getHeight();
+        run.colorTasksDone.set(0);
+        run.numMissingPixels.set(0);
+        if (run.quantizedValues != null) {
+            run.colorTable = run.quantizedValues.createColorTable(run.colorMapper);
+        }
+        for (int i = 0; i < numTasks; i++) {
+            executor.execute(new ColorTask(image, i, run, i * height / numTasks, (i + 1) * height / numTasks - 1));
+        }
+    }
+
+    private void startTasks(Image image, Run run) {
+        for (int i = 0; i < run.numTasks; i++) {
+            executor.execute(new Task(config, image, i, run));
+        }
+    }
+
+    private boolean isProgressive(boolean colorsOnly) {
+        // Recomputing colours is fast anyway
+        return config.isProgressive() && !colorsOnly;
+    }
+
+    /**
+     * @return The statistics of the most recently started run, or {@code null} if no run has been started yet.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Determines the arithmetic used to compute the final pixel values of a fractal within the configured region.
+     *
+     * @param fractal The fractal
+     * @param config  The generator configuration
+     * @param width   The image width
+     * @param height  The image height
+     * @return The precision, never {@link Precision#FLOAT}
+     */
+    public static Precision getPrecision(Fractal fractal, GeneratorConfig config, int width, int height) {
+        final Region region = config.getRegion();
+        final double pixelSize = region.getPixelSize(width, height);
+        final double magnitude = getMagnitude(region);
+        if (pixelSize >= DOUBLE_PIXEL_SIZE * magnitude) {
+            return Precision.DOUBLE;
+        } else if (fractal.isPerturbationSupported()) {
+            return Precision.PERTURBATION;
+        } else if (fractal.isDoubleDoubleSupported()) {
+            return Precision.DOUBLE_DOUBLE;
+        } else {
+            return Precision.DOUBLE;
         }
     }
 
+    /**
+     * Tests whether single precision is sufficient for the preview computed by the first pass of progressive mode.
+     *
+     * @param fractal The fractal
+     * @param config  The generator configuration
+     * @param width   The image width
+     * @param height  The image height
+     * @return {@code true}, if the first pass may use {@link Precision#FLOAT}.
+     */
+    public static boolean isFloatPreview(Fractal fractal, GeneratorConfig config, int width, int height) {
+        final Region region = config.getRegion();
+        final double pixelSize = region.getPixelSize(width, height);
+        // The float kernels don't check for periodicity
+        final boolean periodicityChecking = config.isPeriodicityChecking() && !config.isDecoratedFractal();
+        return pixelSize >= FLOAT_PIXEL_SIZE * getMagnitude(region) && config.getIterMax() <= FLOAT_ITER_MAX
+                && fractal.isFloatSupported() && !periodicityChecking;
+    }
+
+    private static double getMagnitude(Region region) {
+        return Math.max(1.0, Math.max(Math.abs(region.getCenterX()), Math.abs(region.getCenterY())));
+    }
+
     public void cancel() {
-        for (Task task : tasks) {
-            if (task != null) {
-                task.cancel();
-            }
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * Cancels the current run and waits until its tasks have stopped. Tasks only check for cancellation now and then,
+     * e.g. after the border of a rectangle, so this should not be called by a UI thread.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void cancelAndWait() throws InterruptedException {
+        cancel();
+        final Run run = this.run;
+        if (run != null) {
+            run.awaitStopped();
         }
     }
 
+    /**
+     * @return {@code true}, if the most recently started run has stopped, or if no run has been started yet.
+     */
+    public boolean isStopped() {
+        final Run run = this.run;
+        return run == null || run.stopped.getCount() == 0;
+    }
+
+    /**
+     * Replaces all values of an image, e.g. by values read from a file. The image's histogram and quantised values
+     * are reset, colours are not changed. The current run must have stopped, see {@link #cancelAndWait()},
+     * so that its tasks can't overwrite the new values.
+     *
+     * @param image  The image
+     * @param values The new values, one per pixel
+     * @throws IllegalStateException If the current run has not stopped.
+     */
+    public void setValues(Image image, float[] values) {
+        if (!isStopped()) {
+            throw new IllegalStateException("Run not stopped");
+        }
+        synchronized (image) {
+            valuesEpoch.incrementAndGet();
+            System.arraycopy(values, 0, image.getValues(), 0, values.length);
+            image.setQuantizedValues(null);
+            image.setHistogram(null);
+        }
+    }
+
+    /**
+     * Cancels the current run and releases the worker threads. The generator can't be started again afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
     public int getNumTasks() {
         return numTasks;
     }
 
     public void setNumTasks(int numTasks) {
+        if (numTasks <= 0) {
+            throw new IllegalArgumentException("numTasks");
+        }
+        if (numTasks > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(numTasks);
+            executor.setCorePoolSize(numTasks);
+        } else {
+            executor.setCorePoolSize(numTasks);
+            executor.setMaximumPoolSize(numTasks);
+        }
         this.numTasks = numTasks;
     }
 
-    private static class Task extends Thread {
-        private final GeneratorConfig config;
-        private final Image image;
-        private final int taskIndex;
-        private final int startY;
-        private final int endY;
-        private final boolean regenColors;
-        private final ProgressListenerWrapper listener;
+    public int getTileSize() {
+        return tileSize;
+    }
 
-        private boolean cancelled;
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize");
+        }
+        this.tileSize = tileSize;
+    }
 
-        private Task(GeneratorConfig config, Image image, int taskIndex, int startY, int endY, boolean regenColors, ProgressListenerWrapper listener) {
-            super("FrexTask(" + startY + "-" + endY + ")");
-            this.config = config;
-            this.image = image;
-            this.taskIndex = taskIndex;
+    /**
+     * @param width  The image width
+     * @param height The image height
+     * @return The number of tiles an image of the given size is divided into, multiplied by the number of passes
+     *         in progressive mode. That is the number of calls to {@link ProgressListener#onSomeLinesComputed}
+     *         for a complete run which computes not only colours.
+     */
+    public int getNumTiles(int width, int height) {
+        return TileQueue.getNumTiles(width, tileSize) * TileQueue.getNumTiles(height, tileSize)
+                * TileQueue.getNumPasses(isProgressive(false) ? PROGRESSIVE_FIRST_STEP : 1);
+    }
+
+    private static class Tile {
+        final int startX;
+        final int startY;
+        final int endX;
+        final int endY;
+        /**
+         * The step of the next pass which may be computed, guarded by this tile's monitor.
+         */
+        private int nextStep;
+
+        private Tile(int startX, int startY, int endX, int endY, int firstStep) {
+            this.startX = startX;
             this.startY = startY;
+            this.endX = endX;
             this.endY = endY;
-            this.regenColors = regenColors;
-            this.listener = listener;
+            this.nextStep = firstStep;
         }
 
+        /**
+         * Waits until all coarser passes of this tile are completed. As the passes of a tile are queued
+         * in order, the coarser passes have already been polled by other tasks, so this will not block for long.
+         *
+         * @return {@code false}, if the current thread has been interrupted.
+         */
+        private synchronized boolean awaitPass(int step) {
+            while (nextStep > step) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
 
-        @Override
-        public void run() {
+        private synchronized void completePass(int step) {
+            nextStep = step / 2;
+            notifyAll();
+        }
+
+        /**
+         * @return The squared distance of the given point from the nearest pixel of this tile.
+         */
+        private long getDistanceSq(int x, int y) {
+            final long dx = x < startX ? startX - x : x > endX ? x - endX : 0;
+            final long dy = y < startY ? startY - y : y > endY ? y - endY : 0;
+            return dx * dx + dy * dy;
+        }
+    }
 
-            final int width = image.getWidth();
-            final int height = image.getHeight();
-            final Fractal fractal = Registries.fractals.getValue(config.getFractalId(), Fractal.MANDELBROT);
-            final int[] colorPalette = config.getColorGradient();
-            final int iterMax = config.getIterMax();
-            final int[] colours = image.getColours();
-            final float[] values = image.getValues();
-            final double[] orbitX = new double[iterMax];
-            final double[] orbitY = new double[iterMax];
-            final OrbitFunction orbitFunction = new OrbitFunction(Registries.distanceFunctions.getValue(config.getDistanceFunctionId(), DistanceFunction.STINGS),
-                                                                  config.getDistanceDilation(),
-                                                                  config.getDistanceTranslateX(),
-                                                                  config.getDistanceTranslateY(),
-                                                                  config.isTurbulenceEnabled(),
-                                                                  config.getTurbulenceIntensity(),
-                                                                  config.getTurbulenceScale());
-            final boolean regenColors = this.regenColors;
+    /**
+     * A single pass over a tile.
+     */
+    private static class TilePass {
+        final Tile tile;
+        /**
+         * The distance between the pixels computed by this pass.
+         */
+        final int step;
 
-            final Region region = config.getRegion();
-            final double ps = region.getPixelSize(width, height);
-            final double z0x = region.getUpperLeftX(width, ps);
-            final double z0y = region.getUpperLeftY(height, ps);
-            final int numColors = colorPalette.length;
-            final int numColors2 = 2 * colorPalette.length;
-
-            final float colorA = (float) (config.getColorGain() * numColors);
-            final float colorB = (float) config.getColorOffset();
-            final boolean repeatColors = config.isColorRepeat();
-
-            final double bailOut = config.getBailOut();
-            final boolean decorated = config.isDecoratedFractal();
-            final boolean juliaMode = config.isJuliaModeFractal();
-            final double jx = config.getJuliaX();
-            final double jy = config.getJuliaY();
-
-            int lastY = startY;
-            float value;
-            int iter;
-            int colorIndex;
-            int i, ix, iy;
-
-            double zx, zy;
-            for (iy = startY; iy <= endY && !cancelled; iy++) {
-                for (ix = 0; ix < width; ix++) {
-                    i = iy * width + ix;
-                    if (values[i] < 0.0f) {
-                        zx = z0x + ix * ps;
-                        zy = z0y - iy * ps;
-                        if (juliaMode) {
-                            iter = fractal.computeOrbit(zx, zy, jx, jy, iterMax, bailOut, orbitX, orbitY);
-                        } else {
-                            iter = fractal.computeOrbit(0.0, 0.0, zx, zy, iterMax, bailOut, orbitX, orbitY);
-                        }
-                        value = decorated ? orbitFunction.processOrbit(iter, orbitX, orbitY) : (iter < iterMax ? iter : 0.0F);
-                        values[i] = value;
-
-                        //<<< Code duplication
-                        colorIndex = (int) (colorA * value + colorB);
-                        if (repeatColors) {
-                            colorIndex = colorIndex % numColors2;
-                            if (colorIndex >= numColors) {
-                                colorIndex = numColors2 - colorIndex - 1;
-                            }
-                        } else {
-                            if (colorIndex >= numColors) {
-                                colorIndex = numColors - 1;
-                            }
-                        }
-                        colours[i] = colorPalette[colorIndex];
-                        //>>> Code duplication
+        private TilePass(Tile tile, int step) {
+            this.tile = tile;
+            this.step = step;
+        }
+    }
 
-                    } else if (regenColors) {
-                        value = values[i];
+    /**
+     * A queue of tile passes shared by all tasks of a single run. Tasks poll the next tile pass as soon as they are
+     * done with their current one.
+     */
+    private static class TileQueue {
+        private final TilePass[] tilePasses;
+        private final AtomicInteger nextIndex;
 
-                        if (value < 0.0F) {
-                            colours[i] = 0;
-                        } else {
-                            //<<< Code duplication
-                            colorIndex = (int) (colorA * value + colorB);
-                            if (repeatColors) {
-                                colorIndex = colorIndex % numColors2;
-                                if (colorIndex >= numColors) {
-                                    colorIndex = numColors2 - colorIndex - 1;
-                                }
-                            } else {
-                                if (colorIndex >= numColors) {
-                                    colorIndex = numColors - 1;
-                                }
-                            }
-                            colours[i] = colorPalette[colorIndex];
-                            //>>> Code duplication
-                        }
-                    }
+        /**
+         * @param topDown If {@code true}, tiles are queued row by row from the top instead of by their distance from
+         *                the focus point.
+         */
+        private TileQueue(int width, int height, int tileSize, int firstStep, final int focusX, final int focusY,
+                          boolean topDown) {
+            final int numTilesX = getNumTiles(width, tileSize);
+            final int numTilesY = getNumTiles(height, tileSize);
+            final int numTiles = numTilesX * numTilesY;
+            final Tile[] tiles = new Tile[numTiles];
+            int i = 0;
+            for (int tileY = 0; tileY < numTilesY; tileY++) {
+                final int y1 = tileY * tileSize;
+                final int y2 = Math.min(y1 + tileSize, height) - 1;
+                for (int tileX = 0; tileX < numTilesX; tileX++) {
+                    final int x1 = tileX * tileSize;
+                    final int x2 = Math.min(x1 + tileSize, width) - 1;
+                    tiles[i++] = new Tile(x1, y1, x2, y2, firstStep);
                 }
-                if (iy % 16 == 0) {
-                    listener.onSomeLinesComputed(taskIndex, lastY, iy);
-                    lastY = iy;
+            }
+            if (!topDown) {
+                Arrays.sort(tiles, new Comparator<Tile>() {
+                    @Override
+                    public int compare(Tile tile1, Tile tile2) {
+                        final long d1 = tile1.getDistanceSq(focusX, focusY);
+                        final long d2 = tile2.getDistanceSq(focusX, focusY);
+                        return d1 < d2 ? -1 : d1 > d2 ? 1 : 0;
+                    }
+                });
+            }
+            tilePasses = new TilePass[numTiles * getNumPasses(firstStep)];
+            i = 0;
+            for (int step = firstStep; step >= 1; step /= 2) {
+                for (Tile tile : tiles) {
+                    tilePasses[i++] = new TilePass(tile, step);
                 }
             }
+            nextIndex = new AtomicInteger();
+        }
 
-            listener.onTaskTerminated();
+        private static int getNumTiles(int size, int tileSize) {
+            return (size + tileSize - 1) / tileSize;
         }
 
-        public boolean isCancelled() {
-            return cancelled;
+        private static int getNumPasses(int firstStep) {
+            int numPasses = 1;
+            for (int step = firstStep; step > 1; step /= 2) {
+                numPasses++;
+            }
+            return numPasses;
         }
 
-        public void cancel() {
-            this.cancelled = true;
+        private TilePass poll() {
+            final int index = nextIndex.getAndIncrement();
+            return index < tilePasses.length ? tilePasses[index] : null;
+        }
+    }
+
+    /**
+     * The arithmetic used to compute the orbits of a run.
+     */
+    public enum Precision {
+        /**
+         * Single precision, used for the preview pass of shallow zooms as long as the pixel size is above
+         * {@link #FLOAT_PIXEL_SIZE} and the number of iterations does not exceed {@link #FLOAT_ITER_MAX}.
+         * Rounding errors make some pixels differ from double precision, so values are not kept.
+         */
+        FLOAT,
+        /**
+         * Plain double precision, used as long as the pixel size is above {@link #DOUBLE_PIXEL_SIZE}.
+         */
+        DOUBLE,
+        /**
+         * Double-double precision (about 106 bits). Roughly an order of magnitude slower than {@link #DOUBLE},
+         * but resolves pixel sizes down to about {@code 1e-28}. Used by fractals which don't support perturbation.
+         */
+        DOUBLE_DOUBLE,
+        /**
+         * Double precision deltas to a reference orbit computed with arbitrary precision.
+         */
+        PERTURBATION
+    }
+
+    /**
+     * Statistics of a single run.
+     */
+    public static class Statistics {
+        private final Precision precision;
+        private final long startTime;
+        private volatile long stopTime;
+        private volatile int skippedIterations;
+
+        private Statistics(Precision precision) {
+            this.precision = precision;
+            this.startTime = System.currentTimeMillis();
+        }
+
+        public Precision getPrecision() {
+            return precision;
+        }
+
+        /**
+         * @return The number of iterations skipped for each pixel by series approximation.
+         */
+        public int getSkippedIterations() {
+            return skippedIterations;
+        }
+
+        /**
+         * @return The time in milliseconds spent on the run so far.
+         */
+        public long getComputationTime() {
+            final long stopTime = this.stopTime;
+            return (stopTime > 0 ? stopTime : System.currentTimeMillis()) - startTime;
+        }
+
+        private void stop() {
+            stopTime = System.currentTimeMillis();
         }
 
         @Override
-        public void interrupt() {
-            cancel();
-            super.interrupt();
+        public String toString() {
+            return "precision = " + precision
+                    + ", skipped iterations = " + skippedIterations
+                    + ", computation time = " + getComputationTime() + " ms";
         }
     }
 
-    public interface ProgressListener {
-        void onStarted(int numTasks);
+    /**
+     * The state shared by all tasks of a single run.
+     */
+    private static class Run {
+        private final AtomicInteger currentEpoch;
+        private final int epoch;
+        private final TileQueue tileQueue;
+        private final int numTasks;
+        private final ProgressListener listener;
+        private final Statistics statistics;
+        private final AtomicInteger tasksDone;
+        private final AtomicInteger numTasksExpected;
+        private final AtomicInteger numMissingPixels;
+        private final AtomicInteger colorTasksDone;
+        private final AtomicInteger computeTasksDone;
+        private final CountDownLatch stopped;
+        /**
+         * Replaced only before a colouring pass is started.
+         */
+        private ColorMapper colorMapper;
+        /**
+         * Started after the colouring pass, if there are missing pixels.
+         */
+        private Runnable missingPixelsTask;
+        /**
+         * Run after the colouring pass, if the image is complete.
+         */
+        private Runnable quantizationTask;
+        /**
+         * Run after the compute tasks in histogram mode.
+         */
+        private Runnable equalizationTask;
+        /**
+         * Used by the colouring pass, if the colour table is not {@code null}.
+         */
+        private QuantizedValues quantizedValues;
+        private int[] colorTable;
+        /**
+         * The range of the positive values seen by each compute task, used for the equalisation histogram.
+         */
+        private final float[] minSamples;
+        private final float[] maxSamples;
+        private PerturbationReference perturbationReference;
+        /**
+         * The position of the image within the frame its pixel coordinates refer to, usually the image itself.
+         */
+        private int frameX;
+        private int frameY;
+        private int frameWidth;
+        private int frameHeight;
 
-        void onSomeLinesComputed(int taskId, int line1, int line2);
+        private Run(AtomicInteger currentEpoch, int epoch, TileQueue tileQueue, int numTasks, ProgressListener listener,
+                    Statistics statistics, ColorMapper colorMapper) {
+            this.currentEpoch = currentEpoch;
+            this.epoch = epoch;
+            this.tileQueue = tileQueue;
+            this.numTasks = numTasks;
+            this.listener = listener;
+            this.statistics = statistics;
+            this.colorMapper = colorMapper;
+            this.tasksDone = new AtomicInteger();
+            this.numTasksExpected = new AtomicInteger(numTasks);
+            this.numMissingPixels = new AtomicInteger();
+            this.colorTasksDone = new AtomicInteger();
+            this.computeTasksDone = new AtomicInteger();
+            this.stopped = new CountDownLatch(1);
+            this.minSamples = new float[numTasks];
+            this.maxSamples = new float[numTasks];
+        }
 
-        void onStopped(boolean cancelled);
+        private boolean isCancelled() {
+            return currentEpoch.get() != epoch;
+        }
+
+        private ReferenceOrbit getReferenceOrbit(Fractal fractal, GeneratorConfig config) {
+            return perturbationReference.getReferenceOrbit(fractal, config);
+        }
+
+        private SeriesApproximation getSeriesApproximation(Fractal fractal, GeneratorConfig config,
+                                                           double maxDeltaConst) {
+            final SeriesApproximation seriesApproximation =
+                    perturbationReference.getSeriesApproximation(fractal, config, maxDeltaConst);
+            if (seriesApproximation != null) {
+                statistics.skippedIterations = seriesApproximation.getSkippedIterations();
+            }
+            return seriesApproximation;
+        }
+
+        /**
+         * @return {@code true}, if this was the last colour task and the image is complete.
+         */
+        private boolean onColorTaskTerminated(int numMissingPixels) {
+            final int numMissingPixelsTotal = this.numMissingPixels.addAndGet(numMissingPixels);
+            final boolean last = colorTasksDone.incrementAndGet() == numTasks;
+            if (last && numMissingPixelsTotal > 0 && missingPixelsTask != null && !isCancelled()) {
+                // Must be increased before the last colour task terminates
+                numTasksExpected.addAndGet(numTasks);
+                missingPixelsTask.run();
+            }
+            onTaskTerminated();
+            return last && numMissingPixelsTotal == 0 && !isCancelled();
+        }
+
+        private void onComputeTaskTerminated() {
+            if (computeTasksDone.incrementAndGet() == numTasks && equalizationTask != null && !isCancelled()) {
+                // Must be increased before the last compute task terminates
+                numTasksExpected.addAndGet(numTasks);
+                equalizationTask.run();
+            }
+            onTaskTerminated();
+        }
+
+        private void onTaskTerminated() {
+            if (tasksDone.incrementAndGet() == numTasksExpected.get()) {
+                statistics.stop();
+                stopped.countDown();
+                listener.onStopped(isCancelled());
+            }
+        }
+
+        /**
+         * Waits until all tasks of this run have terminated.
+         */
+        private void awaitStopped() throws InterruptedException {
+            stopped.await();
+        }
     }
 
+    /**
+     * The reference orbit and series approximation used for perturbation. They only depend on the configuration
+     * and the frame size, so that runs with the same ones can share them, see {@link #start}.
+     */
+    private static class PerturbationReference {
+        private final long configHash;
+        private final int frameWidth;
+        private final int frameHeight;
+        private ReferenceOrbit referenceOrbit;
+        private SeriesApproximation seriesApproximation;
 
-    private class ProgressListenerWrapper implements ProgressListener {
-        private final ProgressListener wrappedListener;
-        int tasksDone;
+        private PerturbationReference(long configHash, int frameWidth, int frameHeight) {
+            this.configHash = configHash;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
 
-        public ProgressListenerWrapper(ProgressListener wrappedListener) {
-            this.wrappedListener = wrappedListener;
+        private boolean matches(long configHash, int frameWidth, int frameHeight) {
+            return this.configHash == configHash && this.frameWidth == frameWidth && this.frameHeight == frameHeight;
         }
 
+        /**
+         * Gets the reference orbit. It is computed by the first task asking for it.
+         */
+        private synchronized ReferenceOrbit getReferenceOrbit(Fractal fractal, GeneratorConfig config) {
+            if (referenceOrbit == null) {
+                final Region region = config.getRegion();
+                final BigDecimal initX, initY, constX, constY;
+                if (config.isJuliaModeFractal()) {
+                    initX = region.getPreciseCenterX();
+                    initY = region.getPreciseCenterY();
+                    constX = new BigDecimal(config.getJuliaX());
+                    constY = new BigDecimal(config.getJuliaY());
+                } else {
+                    initX = BigDecimal.ZERO;
+                    initY = BigDecimal.ZERO;
+                    constX = region.getPreciseCenterX();
+                    constY = region.getPreciseCenterY();
+                }
+                referenceOrbit = fractal.computeReferenceOrbit(initX, initY, constX, constY,
+                                                               config.getIterMax(), config.getBailOut(),
+                                                               Region.getMathContext(region.getRadius()));
+            }
+            return referenceOrbit;
+        }
+
+        /**
+         * Gets the series approximation for the reference orbit. It is computed by the first task asking for it.
+         *
+         * @return The series approximation, or {@code null} if not supported by the fractal.
+         */
+        private synchronized SeriesApproximation getSeriesApproximation(Fractal fractal, GeneratorConfig config,
+                                                                         double maxDeltaConst) {
+            if (seriesApproximation == null) {
+                seriesApproximation = fractal.computeSeriesApproximation(getReferenceOrbit(fractal, config),
+                                                                         maxDeltaConst, config.getIterMax());
+            }
+            return seriesApproximation;
+        }
+    }
+
+    private static class TaskThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
         @Override
-        public void onStarted(int numTasks) {
-            tasksDone = 0;
-            wrappedListener.onStarted(numTasks);
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FrexTask-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Maps the computed values of a band of lines to colours.
+     */
+    private static class ColorTask implements Runnable {
+        private final Image image;
+        private final int taskIndex;
+        private final Run run;
+        private final int startY;
+        private final int endY;
+
+        private ColorTask(Image image, int taskIndex, Run run, int startY, int endY) {
+            this.image = image;
+            this.taskIndex = taskIndex;
+            this.run = run;
+            this.startY = startY;
+            this.endY = endY;
         }
 
         @Override
-        public void onSomeLinesComputed(int taskId, int line1, int line2) {
-            wrappedListener.onSomeLinesComputed(taskId, line1, line2);
+        public void run() {
+            int numMissingPixels = 0;
+            if (!run.isCancelled() && startY <= endY) {
+                final int width = image.getWidth();
+                if (run.colorTable != null) {
+                    run.quantizedValues.mapColors(run.colorTable, image.getColours(),
+                                                  startY * width, (endY + 1) * width);
+                } else {
+                    numMissingPixels = run.colorMapper.mapColors(image.getValues(), image.getColours(),
+                                                                 startY * width, (endY + 1) * width);
+                }
+                run.listener.onSomeLinesComputed(taskIndex, startY, endY);
+            }
+            if (run.onColorTaskTerminated(numMissingPixels) && run.quantizedValues == null) {
+                run.quantizationTask.run();
+            }
+        }
+    }
+
+    private static class Task implements Runnable {
+        private static final int MIN_RECTANGLE_SIZE = 4;
+        private static final double PERIOD_TOLERANCE_FACTOR = 1.0E-3;
+
+        private final GeneratorConfig config;
+        private final Image image;
+        private final int taskIndex;
+        private final Run run;
+
+        private int width;
+        private int height;
+        private int frameX;
+        private int frameY;
+        private int frameWidth;
+        private int frameHeight;
+        private int[] colours;
+        private float[] values;
+        private Fractal fractal;
+        private OrbitFunction orbitFunction;
+        private double[] orbitX;
+        private double[] orbitY;
+        private int iterMax;
+        private double bailOut;
+        private boolean decorated;
+        private boolean orbitAccumulation;
+        private boolean floatPreview;
+        private boolean smooth;
+        private boolean juliaMode;
+        private boolean interiorCheck;
+        private double periodTolerance;
+        private double jx;
+        private double jy;
+        private double ps;
+        private double z0x;
+        private double z0y;
+        private Precision precision;
+        private double centerXHi;
+        private double centerXLo;
+        private double centerYHi;
+        private double centerYLo;
+        private ReferenceOrbit referenceOrbit;
+        private SeriesApproximation seriesApproximation;
+        private ColorMapper colorMapper;
+        /**
+         * The range of the positive values of all pixels visited by this task.
+         */
+        private float minSample = Float.POSITIVE_INFINITY;
+        private float maxSample;
+
+        private Task(GeneratorConfig config, Image image, int taskIndex, Run run) {
+            this.config = config;
+            this.image = image;
+            this.taskIndex = taskIndex;
+            this.run = run;
         }
 
         @Override
-        public void onStopped(boolean cancelled) {
+        public void run() {
+            if (!run.isCancelled()) {
+                computeTiles();
+            }
+            run.minSamples[taskIndex] = minSample;
+            run.maxSamples[taskIndex] = maxSample;
+            run.onComputeTaskTerminated();
+        }
+
+        private void computeTiles() {
+            prepare();
+
+            // Rectangle checking relies on values being constant inside regions with constant boundary values.
+            // This is not the case for orbit-based decorations.
+            final boolean rectangleChecking = config.isRectangleChecking() && !decorated;
+            final Run run = this.run;
+            final TileQueue tileQueue = run.tileQueue;
+            TilePass tilePass;
+            while (!run.isCancelled() && (tilePass = tileQueue.poll()) != null) {
+                final Tile tile = tilePass.tile;
+                final int step = tilePass.step;
+                if (!tile.awaitPass(step)) {
+                    break;
+                }
+                selectPrecision(step);
+                try {
+                    if (step > 1) {
+                        computeSamples(tile.startX, tile.startY, tile.endX, tile.endY, step);
+                    } else if (rectangleChecking) {
+                        computeRectangle(tile.startX, tile.startY, tile.endX, tile.endY);
+                    } else {
+                        computeLines(tile.startX, tile.startY, tile.endX, tile.endY);
+                    }
+                } finally {
+                    tile.completePass(step);
+                }
+                run.listener.onSomeLinesComputed(taskIndex, tile.startY, tile.endY);
+            }
+        }
+
+        private void prepare() {
+            width = image.getWidth();
+            height = image.getHeight();
+            frameX = run.frameX;
+            frameY = run.frameY;
+            frameWidth = run.frameWidth;
+            frameHeight = run.frameHeight;
+            colours = image.getColours();
+            values = image.getValues();
+
+            fractal = config.getFractal();
+            iterMax = config.getIterMax();
+            bailOut = config.getBailOut();
+            decorated = config.isDecoratedFractal();
+            juliaMode = config.isJuliaModeFractal();
+            jx = config.getJuliaX();
+            jy = config.getJuliaY();
+            interiorCheck = !juliaMode && !decorated;
+            orbitFunction = new OrbitFunction(Registries.distanceFunctions.getValue(config.getDistanceFunctionId(), DistanceFunction.STINGS),
+                                              config.getDistanceDilation(),
+                                              config.getDistanceTranslateX(),
+                                              config.getDistanceTranslateY(),
+                                              config.isTurbulenceEnabled(),
+                                              config.getTurbulenceIntensity(),
+                                              config.getTurbulenceScale());
+
+            final Region region = config.getRegion();
+            ps = region.getPixelSize(frameWidth, frameHeight);
+            z0x = region.getUpperLeftX(frameWidth, ps);
+            z0y = region.getUpperLeftY(frameHeight, ps);
+            precision = run.statistics.getPrecision();
+            if (precision == Precision.PERTURBATION) {
+                referenceOrbit = run.getReferenceOrbit(fractal, config);
+                // Skipped orbit points are not recorded, so we can't use series approximation for decorations
+                if (config.isSeriesApproximation() && !juliaMode && !decorated) {
+                    final double maxDeltaConst = 0.5 * ps * Math.hypot(frameWidth, frameHeight);
+                    seriesApproximation = run.getSeriesApproximation(fractal, config, maxDeltaConst);
+                }
+            } else if (precision == Precision.DOUBLE_DOUBLE) {
+                centerXHi = DoubleDouble.hi(region.getPreciseCenterX());
+                centerXLo = DoubleDouble.lo(region.getPreciseCenterX());
+                centerYHi = DoubleDouble.hi(region.getPreciseCenterY());
+                centerYLo = DoubleDouble.lo(region.getPreciseCenterY());
+            }
+            // Periodicity checking stops iterating before the orbit is complete, so we can't use it for decorations
+            periodTolerance = config.isPeriodicityChecking() && !decorated ? PERIOD_TOLERANCE_FACTOR * ps : 0.0;
+            floatPreview = precision == Precision.DOUBLE && isFloatPreview(fractal, config, frameWidth, frameHeight);
+            // Decorations of double precision orbits are computed while iterating, so that orbits need not be stored.
+            // Non-decorated fractals only need the number of iterations.
+            orbitAccumulation = decorated && precision == Precision.DOUBLE;
+            // Normalised iteration counts are computed from the escaped orbit point. Except for double precision,
+            // which has its own kernels, this is the last point of the recorded orbit.
+            smooth = config.isSmoothIterations() && !decorated && fractal.isSmoothingSupported() && bailOut > 1.0;
+            if (decorated && !orbitAccumulation || smooth && precision != Precision.DOUBLE
+                    || floatPreview && (decorated || smooth)) {
+                orbitX = new double[iterMax];
+                orbitY = new double[iterMax];
+            }
+
+            colorMapper = run.colorMapper;
+        }
+
+        /**
+         * Selects the arithmetic of a pass. Only the first pass of progressive mode may use single precision.
+         */
+        private void selectPrecision(int step) {
+            precision = floatPreview && step == PROGRESSIVE_FIRST_STEP ? Precision.FLOAT : run.statistics.getPrecision();
+            orbitAccumulation = decorated && precision == Precision.DOUBLE;
+        }
+
+        private void computeLines(int x1, int y1, int x2, int y2) {
+            final Run run = this.run;
+            for (int iy = y1; iy <= y2 && !run.isCancelled(); iy++) {
+                for (int ix = x1; ix <= x2; ix++) {
+                    computePixel(ix, iy);
+                }
+            }
+        }
+
+        /**
+         * Computes every {@code step}-th pixel of a rectangle, counted from its upper left corner, and fills the block
+         * of size {@code step} below and right of it with its colour. Pixels which have already been computed
+         * by the previous, coarser pass are skipped. Filled pixels are only given a colour but no value,
+         * so that they are computed by subsequent passes.
+         */
+        private void computeSamples(int x1, int y1, int x2, int y2, int step) {
+            final Run run = this.run;
+            final int coarseStep = 2 * step;
+            final boolean firstPass = step == PROGRESSIVE_FIRST_STEP;
+            for (int iy = y1; iy <= y2 && !run.isCancelled(); iy += step) {
+                final int blockY2 = Math.min(iy + step - 1, y2);
+                for (int ix = x1; ix <= x2; ix += step) {
+                    if (!firstPass && (ix - x1) % coarseStep == 0 && (iy - y1) % coarseStep == 0) {
+                        continue;
+                    }
+                    computePixel(ix, iy);
+                    final int colour = colours[iy * width + ix];
+                    final int blockX2 = Math.min(ix + step - 1, x2);
+                    for (int by = iy; by <= blockY2; by++) {
+                        for (int bx = ix; bx <= blockX2; bx++) {
+                            final int i = by * width + bx;
+                            if (values[i] < 0.0F) {
+                                colours[i] = colour;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes a rectangle using the Mariani-Silver algorithm: only the boundary pixels are computed.
+         * If they all share the same value, the interior is filled with it, otherwise the rectangle
+         * is subdivided into four quadrants which are processed the same way.
+         */
+        private void computeRectangle(int x1, int y1, int x2, int y2) {
+            if (x2 - x1 < MIN_RECTANGLE_SIZE || y2 - y1 < MIN_RECTANGLE_SIZE) {
+                computeLines(x1, y1, x2, y2);
+                return;
+            }
+
+            final float value = computePixel(x1, y1);
+            boolean uniform = true;
+            for (int ix = x1; ix <= x2; ix++) {
+                uniform &= computePixel(ix, y1) == value;
+                uniform &= computePixel(ix, y2) == value;
+            }
+            for (int iy = y1 + 1; iy < y2; iy++) {
+                uniform &= computePixel(x1, iy) == value;
+                uniform &= computePixel(x2, iy) == value;
+            }
+
+            if (run.isCancelled()) {
+                return;
+            }
+
+            if (uniform) {
+                final int colour = colorMapper.getColor(value);
+                int i;
+                for (int iy = y1 + 1; iy < y2; iy++) {
+                    for (int ix = x1 + 1; ix < x2; ix++) {
+                        i = iy * width + ix;
+                        if (values[i] < 0.0F) {
+                            values[i] = value;
+                            colours[i] = colour;
+                        } else {
+                            addSample(values[i]);
+                        }
+                    }
+                }
+            } else {
+                final int xm = (x1 + x2) / 2;
+                final int ym = (y1 + y2) / 2;
+                computeRectangle(x1, y1, xm, ym);
+                computeRectangle(xm, y1, x2, ym);
+                computeRectangle(x1, ym, xm, y2);
+                computeRectangle(xm, ym, x2, y2);
+            }
+        }
+
+        /**
+         * Computes the value and colour of a pixel, if not already done.
+         *
+         * @return The pixel's value
+         */
+        private float computePixel(int ix, int iy) {
+            final int i = iy * width + ix;
+            float value = values[i];
+            if (value < 0.0F) {
+                if (orbitAccumulation) {
+                    orbitFunction.reset();
+                    computeOrbit(ix, iy);
+                    value = orbitFunction.getAccumulatedValue();
+                } else if (smooth) {
+                    value = computeSmoothValue(ix, iy);
+                } else {
+                    final int iter = computeOrbit(ix, iy);
+                    value = decorated ? orbitFunction.processOrbit(iter, orbitX, orbitY) : (iter < iterMax ? iter : 0.0F);
+                }
+                colours[i] = colorMapper.getColor(value);
+                if (precision == Precision.FLOAT) {
+                    // Only a preview, the final pass computes the pixel again
+                    return value;
+                }
+                values[i] = value;
+            }
+            addSample(value);
+            return value;
+        }
+
+        private void addSample(float value) {
+            if (value > 0.0F) {
+                if (value < minSample) {
+                    minSample = value;
+                }
+                if (value > maxSample) {
+                    maxSample = value;
+                }
+            }
+        }
+
+        private float computeSmoothValue(int ix, int iy) {
+            final double iter;
+            if (precision == Precision.DOUBLE) {
+                final double zx = z0x + (frameX + ix) * ps;
+                final double zy = z0y - (frameY + iy) * ps;
+                if (juliaMode) {
+                    iter = fractal.computeSmoothIterations(zx, zy, jx, jy, iterMax, bailOut, periodTolerance);
+                } else if (interiorCheck && fractal.isKnownInterior(zx, zy)) {
+                    iter = iterMax;
+                } else {
+                    iter = fractal.computeSmoothIterations(0.0, 0.0, zx, zy, iterMax, bailOut, periodTolerance);
+                }
+            } else {
+                final int n = computeOrbit(ix, iy);
+                // Orbit points skipped by series approximation are not recorded
+                final int skipped = seriesApproximation != null ? seriesApproximation.getSkippedIterations() : 0;
+                if (n > skipped && n < iterMax) {
+                    final double x = orbitX[n - 1];
+                    final double y = orbitY[n - 1];
+                    iter = Fractal.getSmoothIterations(n, x * x + y * y, bailOut);
+                } else {
+                    iter = n;
+                }
+            }
+            return iter < iterMax ? (float) iter : 0.0F;
         }
 
-        public void onTaskTerminated() {
-            tasksDone++;
-            if (tasksDone == tasks.length) {
-                boolean cancelled = false;
-                for (Task task : tasks) {
-                    cancelled |= task != null && task.isCancelled();
+        private int computeOrbit(int ix, int iy) {
+            final double zx = z0x + (frameX + ix) * ps;
+            final double zy = z0y - (frameY + iy) * ps;
+            final int iter;
+            if (precision == Precision.FLOAT) {
+                if (juliaMode) {
+                    iter = fractal.computeFloatOrbit((float) zx, (float) zy, (float) jx, (float) jy, iterMax, (float) bailOut, orbitX, orbitY);
+                } else if (interiorCheck && fractal.isKnownInterior(zx, zy)) {
+                    iter = iterMax;
+                } else {
+                    iter = fractal.computeFloatOrbit(0.0F, 0.0F, (float) zx, (float) zy, iterMax, (float) bailOut, orbitX, orbitY);
+                }
+            } else if (precision == Precision.DOUBLE_DOUBLE) {
+                iter = computeDoubleDoubleOrbit(ix, iy);
+            } else if (precision == Precision.PERTURBATION) {
+                final double dx = (frameX + ix - 0.5 * frameWidth) * ps;
+                final double dy = (0.5 * frameHeight - frameY - iy) * ps;
+                if (juliaMode) {
+                    iter = fractal.computePerturbedOrbit(referenceOrbit, dx, dy, 0.0, 0.0, iterMax, bailOut, orbitX, orbitY);
+                } else if (interiorCheck && fractal.isKnownInterior(zx, zy)) {
+                    iter = iterMax;
+                } else if (seriesApproximation != null) {
+                    iter = fractal.computePerturbedOrbit(referenceOrbit, seriesApproximation.getSkippedIterations(),
+                                                         seriesApproximation.getDeltaX(dx, dy),
+                                                         seriesApproximation.getDeltaY(dx, dy),
+                                                         dx, dy, iterMax, bailOut, orbitX, orbitY);
+                } else {
+                    iter = fractal.computePerturbedOrbit(referenceOrbit, 0.0, 0.0, dx, dy, iterMax, bailOut, orbitX, orbitY);
+                }
+            } else if (orbitAccumulation) {
+                if (juliaMode) {
+                    iter = fractal.computeOrbit(zx, zy, jx, jy, iterMax, bailOut, orbitFunction);
+                } else {
+                    iter = fractal.computeOrbit(0.0, 0.0, zx, zy, iterMax, bailOut, orbitFunction);
+                }
+            } else if (juliaMode) {
+                if (periodTolerance > 0.0) {
+                    iter = fractal.computeIterations(zx, zy, jx, jy, iterMax, bailOut, periodTolerance);
+                } else {
+                    iter = fractal.computeIterations(zx, zy, jx, jy, iterMax, bailOut);
                 }
-                wrappedListener.onStopped(cancelled);
+            } else if (interiorCheck && fractal.isKnownInterior(zx, zy)) {
+                iter = iterMax;
+            } else {
+                if (periodTolerance > 0.0) {
+                    iter = fractal.computeIterations(0.0, 0.0, zx, zy, iterMax, bailOut, periodTolerance);
+                } else {
+                    iter = fractal.computeIterations(0.0, 0.0, zx, zy, iterMax, bailOut);
+                }
+            }
+            return iter;
+        }
+
+        private int computeDoubleDoubleOrbit(int ix, int iy) {
+            final double dx = (frameX + ix - 0.5 * frameWidth) * ps;
+            final double dy = (0.5 * frameHeight - frameY - iy) * ps;
+            double s, e;
+            s = centerXHi + dx;
+            e = DoubleDouble.sumError(centerXHi, dx, s) + centerXLo;
+            final double zxh = s + e;
+            final double zxl = e - (zxh - s);
+            s = centerYHi + dy;
+            e = DoubleDouble.sumError(centerYHi, dy, s) + centerYLo;
+            final double zyh = s + e;
+            final double zyl = e - (zyh - s);
+            if (juliaMode) {
+                return fractal.computeDoubleDoubleOrbit(zxh, zxl, zyh, zyl, jx, 0.0, jy, 0.0, iterMax, bailOut, orbitX, orbitY);
+            } else if (interiorCheck && fractal.isKnownInterior(zxh, zyh)) {
+                return iterMax;
+            } else {
+                return fractal.computeDoubleDoubleOrbit(0.0, 0.0, 0.0, 0.0, zxh, zxl, zyh, zyl, iterMax, bailOut, orbitX, orbitY);
             }
         }
 
     }
+
+    public interface ProgressListener {
+        void onStarted(int numTasks);
+
+        /**
+         * Called once for each completed tile.
+         *
+         * @param taskId The index of the task which computed the tile
+         * @param line1  The first image line covered by the tile
+         * @param line2  The last image line covered by the tile
+         */
+        void onSomeLinesComputed(int taskId, int line1, int line2);
+
+        void onStopped(boolean cancelled);
+    }
 }
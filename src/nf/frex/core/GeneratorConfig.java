@@ -19,6 +19,8 @@
 
 package nf.frex.core;
 
+import java.math.BigDecimal;
+
 /**
  * @author Norman Fomferra
  */
@@ -27,10 +29,13 @@ public class GeneratorConfig {
     public static final int GRADIENT_COLOR_COUNT = 1024;
     private String configName;
     private String fractalId;
+    private String fractalFormula;
+    private FormulaFractal formulaFractal;
     private Region region;
     private int iterMax;
     private double bailOut;
     private boolean juliaModeFractal;
+    private boolean smoothIterations;
     private double juliaX;
     private double juliaY;
 
@@ -46,20 +51,80 @@ public class GeneratorConfig {
     private double colorGain;
     private double colorOffset;
     private boolean colorRepeat;
+    private boolean colorHistogram;
     private double turbulenceIntensity;
     private double turbulenceScale;
     private boolean turbulenceEnabled;
 
+    private boolean rectangleChecking;
+    private boolean periodicityChecking;
+    private boolean seriesApproximation;
+    private boolean progressive;
+
+    /**
+     * Sets the default configuration, the Mandelbrot set coloured by the "SUNSET" colour scheme.
+     * Performance settings such as rectangle checking are left unchanged.
+     */
+    public void setDefaults() {
+        setFractalId("MANDELBROT");
+        Fractal fractal = getFractal();
+        setRegion(fractal.getDefaultRegion().clone());
+        setIterMax(fractal.getDefaultIterMax());
+        setBailOut(fractal.getDefaultBailOut());
+        setJuliaModeFractal(false);
+        setSmoothIterations(true);
+        setJuliaX(0.0);
+        setJuliaY(0.0);
+
+        setDecoratedFractal(false);
+        setDistanceFunctionId("STINGS");
+        setDistanceDilation(0.2);
+        setDistanceTranslateX(0.0);
+        setDistanceTranslateY(0.0);
+        setTurbulenceEnabled(false);
+        setTurbulenceIntensity(2.0);
+        setTurbulenceScale(1.0);
+
+        setColorSchemeId("SUNSET");
+        setColorScheme(Registries.colorSchemes.getValue(getColorSchemeId()));
+        setColorGain(1.0 / fractal.getDefaultIterMax());
+        setColorOffset(0.0);
+        setColorRepeat(true);
+        setColorHistogram(false);
+    }
+
     public void restoreInstanceState(PropertySet propertySet) {
         setFractalId(propertySet.getString("fractalId", getFractalId()));
+        if ("FORMULA".equals(getFractalId())) {
+            // A missing formula must not leave the formula of the previous document in place
+            String fractalFormula = propertySet.getString("fractalFormula", FormulaFractal.DEFAULT_FORMULA);
+            try {
+                setFractalFormula(fractalFormula);
+            } catch (IllegalArgumentException e) {
+                setFractalFormula(FormulaFractal.DEFAULT_FORMULA);
+            }
+        }
         setIterMax(propertySet.getInt("iterMax", getIterMax()));
         setBailOut(propertySet.getDouble("bailOut", getBailOut()));
         setJuliaModeFractal(propertySet.getBoolean("juliaModeFractal", isJuliaModeFractal()));
         setJuliaX(propertySet.getDouble("juliaX", getJuliaX()));
         setJuliaY(propertySet.getDouble("juliaY", getJuliaY()));
-        setRegion(new Region(propertySet.getDouble("regionCenterX", getRegion().getCenterX()),
-                             propertySet.getDouble("regionCenterY", getRegion().getCenterY()),
-                             propertySet.getDouble("regionRadius", getRegion().getRadius())));
+        setSmoothIterations(propertySet.getBoolean("smoothIterations", false));
+        String preciseCenterX = propertySet.getString("regionPreciseCenterX", null);
+        String preciseCenterY = propertySet.getString("regionPreciseCenterY", null);
+        double radius = propertySet.getDouble("regionRadius", getRegion().getRadius());
+        if (preciseCenterX != null && preciseCenterY != null) {
+            try {
+                setRegion(new Region(new BigDecimal(preciseCenterX), new BigDecimal(preciseCenterY), radius));
+            } catch (NumberFormatException e) {
+                preciseCenterX = null;
+            }
+        }
+        if (preciseCenterX == null || preciseCenterY == null) {
+            setRegion(new Region(propertySet.getDouble("regionCenterX", getRegion().getCenterX()),
+                                 propertySet.getDouble("regionCenterY", getRegion().getCenterY()),
+                                 radius));
+        }
 
         setDecoratedFractal(propertySet.getBoolean("decoratedFractal", isDecoratedFractal()));
         setDistanceFunctionId(propertySet.getString("distanceFunctionId", getDistanceFunctionId()));
@@ -68,7 +133,7 @@ public class GeneratorConfig {
         setDistanceTranslateY(propertySet.getDouble("distanceTranslateY", getDistanceTranslateY()));
         setTurbulenceEnabled(propertySet.getBoolean("turbulenceEnabled", false));  // false, because turbulence is extremely compute intensive
         setTurbulenceIntensity(propertySet.getDouble("turbulenceIntensity", getTurbulenceIntensity()));
-        setTurbulenceIntensity(propertySet.getDouble("turbulenceScale", getTurbulenceScale()));
+        setTurbulenceScale(propertySet.getDouble("turbulenceScale", getTurbulenceScale()));
 
         setColorSchemeId(propertySet.getString("colorSchemeId", getColorSchemeId()));
         ColorScheme colorScheme = Registries.colorSchemes.getValue(getColorSchemeId());
@@ -88,18 +153,27 @@ public class GeneratorConfig {
         setColorGain(propertySet.getDouble("colorGain", getColorGain()));
         setColorOffset(propertySet.getDouble("colorOffset", getColorOffset()));
         setColorRepeat(propertySet.getBoolean("colorRepeat", isColorRepeat()));
+        setColorHistogram(propertySet.getBoolean("colorHistogram", false));
     }
 
     public void saveInstanceState(PropertySet propertySet) {
         propertySet.setString("fractalId", getFractalId());
+        if ("FORMULA".equals(getFractalId()) && getFractalFormula() != null) {
+            propertySet.setString("fractalFormula", getFractalFormula());
+        }
         propertySet.setInt("iterMax", getIterMax());
         propertySet.setDouble("bailOut", getBailOut());
         propertySet.setBoolean("juliaModeFractal", isJuliaModeFractal());
         propertySet.setDouble("juliaX", getJuliaX());
         propertySet.setDouble("juliaY", getJuliaY());
+        propertySet.setBoolean("smoothIterations", isSmoothIterations());
         propertySet.setDouble("regionCenterX", getRegion().getCenterX());
         propertySet.setDouble("regionCenterY", getRegion().getCenterY());
         propertySet.setDouble("regionRadius", getRegion().getRadius());
+        if (getRegion().isPrecise()) {
+            propertySet.setString("regionPreciseCenterX", getRegion().getPreciseCenterX().toString());
+            propertySet.setString("regionPreciseCenterY", getRegion().getPreciseCenterY().toString());
+        }
 
         propertySet.setBoolean("decoratedFractal", isDecoratedFractal());
         propertySet.setString("distanceFunctionId", getDistanceFunctionId());
@@ -115,6 +189,7 @@ public class GeneratorConfig {
         propertySet.setDouble("colorGain", getColorGain());
         propertySet.setDouble("colorOffset", getColorOffset());
         propertySet.setBoolean("colorRepeat", isColorRepeat());
+        propertySet.setBoolean("colorHistogram", isColorHistogram());
     }
 
     public double getBailOut() {
@@ -157,6 +232,18 @@ public class GeneratorConfig {
         this.colorRepeat = colorRepeat;
     }
 
+    /**
+     * @return {@code true}, if colours shall be equalised by a histogram of the pixel values,
+     *         so that all colours of the gradient are used with roughly the same frequency.
+     */
+    public boolean isColorHistogram() {
+        return colorHistogram;
+    }
+
+    public void setColorHistogram(boolean colorHistogram) {
+        this.colorHistogram = colorHistogram;
+    }
+
     public ColorScheme getColorScheme() {
         return colorScheme;
     }
@@ -226,8 +313,42 @@ public class GeneratorConfig {
         return fractalId;
     }
 
+    /**
+     * @param fractalId The fractal ID. Any fractal formula is cleared, unless the ID is {@code "FORMULA"}.
+     */
     public void setFractalId(String fractalId) {
         this.fractalId = fractalId;
+        if (!"FORMULA".equals(fractalId)) {
+            this.fractalFormula = null;
+            this.formulaFractal = null;
+        }
+    }
+
+    /**
+     * @return The iteration formula used if the fractal ID is {@code "FORMULA"}, may be {@code null}.
+     */
+    public String getFractalFormula() {
+        return fractalFormula;
+    }
+
+    /**
+     * @param fractalFormula The iteration formula used if the fractal ID is {@code "FORMULA"}
+     * @throws IllegalArgumentException If the formula can't be parsed.
+     * @see FormulaFractal
+     */
+    public void setFractalFormula(String fractalFormula) throws IllegalArgumentException {
+        this.formulaFractal = new FormulaFractal(fractalFormula);
+        this.fractalFormula = fractalFormula;
+    }
+
+    /**
+     * @return The fractal given by the fractal ID, or the fractal compiled from the fractal formula.
+     */
+    public Fractal getFractal() {
+        if ("FORMULA".equals(fractalId) && formulaFractal != null) {
+            return formulaFractal;
+        }
+        return Registries.fractals.getValue(fractalId, Fractal.MANDELBROT);
     }
 
     public int getIterMax() {
@@ -262,6 +383,19 @@ public class GeneratorConfig {
         this.juliaY = juliaY;
     }
 
+    /**
+     * @return {@code true}, if non-decorated fractals shall use normalised iteration counts as pixel values,
+     *         so that colour gradients show no bands.
+     * @see Fractal#getSmoothIterations
+     */
+    public boolean isSmoothIterations() {
+        return smoothIterations;
+    }
+
+    public void setSmoothIterations(boolean smoothIterations) {
+        this.smoothIterations = smoothIterations;
+    }
+
     public Region getRegion() {
         return region;
     }
@@ -294,4 +428,51 @@ public class GeneratorConfig {
     public boolean isTurbulenceEnabled() {
         return turbulenceEnabled;
     }
+
+    /**
+     * @return {@code true}, if the Mariani-Silver "rectangle checking" algorithm shall be used to speed up
+     *         computation of non-decorated fractals.
+     */
+    public boolean isRectangleChecking() {
+        return rectangleChecking;
+    }
+
+    public void setRectangleChecking(boolean rectangleChecking) {
+        this.rectangleChecking = rectangleChecking;
+    }
+
+    /**
+     * @return {@code true}, if orbits of non-decorated fractals shall be checked for periodicity,
+     *         so that iteration of bounded orbits can stop early.
+     */
+    public boolean isPeriodicityChecking() {
+        return periodicityChecking;
+    }
+
+    public void setPeriodicityChecking(boolean periodicityChecking) {
+        this.periodicityChecking = periodicityChecking;
+    }
+
+    /**
+     * @return {@code true}, if a series approximation shall be used to skip the first iterations
+     *         of perturbed orbits of non-decorated fractals.
+     */
+    public boolean isSeriesApproximation() {
+        return seriesApproximation;
+    }
+
+    public void setSeriesApproximation(boolean seriesApproximation) {
+        this.seriesApproximation = seriesApproximation;
+    }
+
+    /**
+     * @return {@code true}, if images shall be computed in several passes from coarse to fine resolution.
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
 }
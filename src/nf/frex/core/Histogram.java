@@ -0,0 +1,170 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * A histogram of pixel values, used to equalise colours: each value is replaced by its rank, that is the fraction
+ * of pixels with lower values, scaled to the range {@code 0} to {@code maxValue}. Therefore all colours of the
+ * gradient are used with roughly the same frequency.
+ * <p/>
+ * The {@link #NUM_BINS} bins evenly cover the range of the values actually present, so that non-integer values,
+ * e.g. normalised iteration counts or decorations, are ranked as finely as iteration counts. Ranks are interpolated
+ * linearly within a bin. The value zero, which is the value of bounded orbits of non-decorated fractals,
+ * is excluded and stays zero. Histograms are not thread-safe.
+ *
+ * @author Norman Fomferra
+ */
+public final class Histogram {
+    public static final int NUM_BINS = 0x10000;
+
+    private final int maxValue;
+    private final float minSample;
+    private final float binsPerValue;
+    private final int[] counts;
+    private int count;
+
+    /**
+     * @param maxValue  The maximum equalised value
+     * @param minSample The minimum non-zero value to be accumulated
+     * @param maxSample The maximum value to be accumulated
+     */
+    public Histogram(int maxValue, float minSample, float maxSample) {
+        this.maxValue = maxValue;
+        this.minSample = minSample;
+        this.binsPerValue = maxSample > minSample ? NUM_BINS / (maxSample - minSample) : 0.0F;
+        this.counts = new int[NUM_BINS];
+    }
+
+    /**
+     * @param values   The pixel values, negative values denote missing values and are ignored
+     * @param maxValue The maximum equalised value
+     * @return The histogram of the given values
+     */
+    public static Histogram create(float[] values, int maxValue) {
+        float minSample = Float.POSITIVE_INFINITY;
+        float maxSample = 0.0F;
+        for (float value : values) {
+            if (value > 0.0F) {
+                if (value < minSample) {
+                    minSample = value;
+                }
+                if (value > maxSample) {
+                    maxSample = value;
+                }
+            }
+        }
+        final Histogram histogram = new Histogram(maxValue, Math.min(minSample, maxSample), maxSample);
+        histogram.accumulate(values, 0, values.length);
+        return histogram;
+    }
+
+    /**
+     * @return The number of accumulated values.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param value A pixel value, must not be negative
+     */
+    public void accumulate(float value) {
+        if (value > 0.0F) {
+            counts[getBin(value)]++;
+        }
+        count++;
+    }
+
+    /**
+     * Accumulates a range of pixel values. Negative values denote missing values and are ignored.
+     *
+     * @param values The pixel values
+     * @param start  The index of the first value
+     * @param end    The index after the last value
+     */
+    public void accumulate(float[] values, int start, int end) {
+        float value;
+        for (int i = start; i < end; i++) {
+            value = values[i];
+            if (value >= 0.0F) {
+                accumulate(value);
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram, e.g. of another band of the same image.
+     *
+     * @param histogram A histogram with the same bins
+     */
+    public void add(Histogram histogram) {
+        if (histogram.minSample != minSample || histogram.binsPerValue != binsPerValue) {
+            throw new IllegalArgumentException("histogram");
+        }
+        final int[] counts = this.counts;
+        final int[] otherCounts = histogram.counts;
+        for (int i = 0; i < NUM_BINS; i++) {
+            counts[i] += otherCounts[i];
+        }
+        count += histogram.count;
+    }
+
+    /**
+     * @return The minimum non-zero value covered by the bins.
+     */
+    public float getMinSample() {
+        return minSample;
+    }
+
+    /**
+     * @return The number of bins per unit pixel value.
+     */
+    public float getBinsPerValue() {
+        return binsPerValue;
+    }
+
+    /**
+     * Computes the equalised values at the lower bin boundaries, followed by the one at the upper boundary of the
+     * last bin. The equalised value of a pixel value is interpolated between those of the boundaries of its bin.
+     *
+     * @return The {@link #NUM_BINS}{@code + 1} equalised bin boundaries.
+     */
+    public float[] createEqualizedValues() {
+        final float[] equalizedValues = new float[NUM_BINS + 1];
+        long total = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            total += counts[i];
+        }
+        if (total == 0) {
+            return equalizedValues;
+        }
+        long sum = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            sum += counts[i];
+            equalizedValues[i + 1] = (float) ((double) maxValue * sum / total);
+        }
+        return equalizedValues;
+    }
+
+    private int getBin(float value) {
+        final int bin = (int) ((value - minSample) * binsPerValue);
+        return bin < 0 ? 0 : (bin < NUM_BINS ? bin : NUM_BINS - 1);
+    }
+}
@@ -19,16 +19,21 @@
 
 package nf.frex.core;
 
-import android.graphics.Bitmap;
-
 /**
  * @author Norman Fomferra
  */
 public class Image {
+    /**
+     * The value of pixels which are yet to be computed.
+     */
+    public static final float MISSING_VALUE = -1.0F;
+
     private int width;
     private int height;
     private int[] colours;
     private float[] values;
+    private volatile QuantizedValues quantizedValues;
+    private volatile Histogram histogram;
 
     public Image(int width, int height) {
         resize(width, height);
@@ -46,19 +51,30 @@ public class Image {
         return width;
     }
 
-    public int getHeight() {
-        return height;
+    /**
+     * @return The quantised values, or {@code null} if they are not available or no longer valid.
+     */
+    public QuantizedValues getQuantizedValues() {
+        return quantizedValues;
+    }
+
+    public void setQuantizedValues(QuantizedValues quantizedValues) {
+        this.quantizedValues = quantizedValues;
+    }
+
+    /**
+     * @return The histogram of the values, or {@code null} if it is not available or no longer valid.
+     */
+    public Histogram getHistogram() {
+        return histogram;
     }
 
-    public Bitmap createBitmap() {
-        //return Bitmap.createBitmap(getColours(), getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        getPixels(bitmap);
-        return bitmap;
+    public void setHistogram(Histogram histogram) {
+        this.histogram = histogram;
     }
 
-    public void getPixels(Bitmap bitmap) {
-        bitmap.setPixels(getColours(), 0, getWidth(), 0, 0, getWidth(), getHeight());
+    public int getHeight() {
+        return height;
     }
 
     public void resize(int width, int height) {
@@ -66,5 +82,7 @@ public class Image {
         this.height = height;
         this.colours = new int[width * height];
         this.values = new float[width * height];
+        this.quantizedValues = null;
+        this.histogram = null;
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * Receives the points of an orbit while it is being computed, so that the orbit needs not be stored.
+ *
+ * @author Norman Fomferra
+ * @see Fractal#computeOrbit(double, double, double, double, int, double, OrbitAccumulator)
+ */
+public interface OrbitAccumulator {
+    /**
+     * @param x The X-value of the next orbit point
+     * @param y The Y-value of the next orbit point
+     */
+    void accumulate(double x, double y);
+}
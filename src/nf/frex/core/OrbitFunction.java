@@ -20,26 +20,77 @@
 package nf.frex.core;
 
 /**
+ * Computes the value of a decorated fractal's pixel from its orbit. The orbit may either be passed as a whole
+ * to {@link #processOrbit}, or point by point while it is computed, in which case this function acts as an
+ * {@link OrbitAccumulator}.
+ * <p/>
+ * Translated orbit points are collected in a small buffer, which is passed to the distance function in one call
+ * whenever it is full. Distance functions which are {@link DistanceFunction.Summing} then evaluate the points
+ * in a loop of their own. Instances are not thread-safe.
+ *
  * @author Norman Fomferra
  */
-public final class OrbitFunction {
+public final class OrbitFunction implements OrbitAccumulator {
+    private static final int BUFFER_SIZE = 64;
 
     private final DistanceFunction distanceFunction;
+    private final DistanceFunction.Summing summingFunction;
     private final double dilation;
     private final double translateX;
     private final double translateY;
     private final boolean turbulence;
     private final double turbulenceIntensity;
     private final double turbulenceScale;
+    private final double scale;
+    private final double[] bufferX;
+    private final double[] bufferY;
+    private int bufferCount;
+    private double vicinitySum;
 
     public OrbitFunction(DistanceFunction distanceFunction, double dilation, double translateX, double translateY, boolean turbulence, double turbulenceIntensity, double turbulenceScale) {
         this.dilation = dilation;
         this.translateX = translateX;
         this.translateY = translateY;
         this.distanceFunction = distanceFunction;
+        this.summingFunction = distanceFunction instanceof DistanceFunction.Summing ? (DistanceFunction.Summing) distanceFunction : null;
         this.turbulence = turbulence;
         this.turbulenceIntensity = turbulenceIntensity;
         this.turbulenceScale = turbulenceScale;
+        this.scale = 1.0 / dilation;
+        this.bufferX = new double[BUFFER_SIZE];
+        this.bufferY = new double[BUFFER_SIZE];
+    }
+
+    /**
+     * Starts accumulating a new orbit.
+     */
+    public void reset() {
+        bufferCount = 0;
+        vicinitySum = 0.0;
+    }
+
+    @Override
+    public void accumulate(double x, double y) {
+        if (turbulence) {
+            final double t = turbulenceIntensity * Turbulence.computeTurbulence(x, y, turbulenceScale, 3);
+            bufferX[bufferCount] = x - translateX + t;
+            bufferY[bufferCount] = y - translateY + t;
+        } else {
+            bufferX[bufferCount] = x - translateX;
+            bufferY[bufferCount] = y - translateY;
+        }
+        if (++bufferCount == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * @return The value of the orbit accumulated since the last {@link #reset()}, the same value
+     *         {@link #processOrbit} returns for the whole orbit.
+     */
+    public float getAccumulatedValue() {
+        flush();
+        return (float) vicinitySum;
     }
 
     /**
@@ -49,31 +100,30 @@ public final class OrbitFunction {
      * @return a number x, with 0 <= x <= numPoints
      */
     public float processOrbit(int numPoints, double[] orbitX, double[] orbitY) {
-        double vicinitySum = 0.0;
-        if (numPoints > 0) {
+        reset();
+        for (int i = 0; i < numPoints; i++) {
+            accumulate(orbitX[i], orbitY[i]);
+        }
+        return getAccumulatedValue();
+    }
+
+    private void flush() {
+        final int n = bufferCount;
+        if (n == 0) {
+            return;
+        }
+        if (summingFunction != null) {
+            vicinitySum = summingFunction.sumVicinities(vicinitySum, bufferX, bufferY, n, scale);
+        } else {
             final DistanceFunction f = this.distanceFunction;
-            final double a = 1.0 / dilation;
-            final double tx = this.translateX;
-            final double ty = this.translateY;
+            double sum = vicinitySum;
             double distance;
-            if (turbulence) {
-                final double ti =  turbulenceIntensity;
-                final double ts =  turbulenceScale;
-                double x, y, t;
-                for (int i = 0; i < numPoints; i++) {
-                    x = orbitX[i];
-                    y = orbitY[i];
-                    t = ti * Turbulence.computeTurbulence(x, y, ts, 3);
-                    distance = a * f.evaluate(x  - tx + t, y - ty + t);
-                    vicinitySum += 1.0 / (1.0 + distance * distance);
-                }
-            }  else {
-                for (int i = 0; i < numPoints; i++) {
-                    distance = a * f.evaluate(orbitX[i] - tx, orbitY[i] - ty);
-                    vicinitySum += 1.0 / (1.0 + distance * distance);
-                }
+            for (int i = 0; i < n; i++) {
+                distance = scale * f.evaluate(bufferX[i], bufferY[i]);
+                sum += 1.0 / (1.0 + distance * distance);
             }
+            vicinitySum = sum;
         }
-        return (float) vicinitySum;
+        bufferCount = 0;
     }
 }
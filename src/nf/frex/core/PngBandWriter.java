@@ -0,0 +1,119 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A progress listener which writes the lines of an image to a {@link PngWriter} while the image is being computed.
+ * A band of lines is written as soon as all tiles covering it are complete, so that compression overlaps with
+ * computation. Use {@link Generator#startTopDown} to complete bands in order.
+ * <p/>
+ * Colours must be final when a tile is complete, so runs must neither be progressive nor in histogram mode.
+ *
+ * @author Norman Fomferra
+ */
+public final class PngBandWriter implements Generator.ProgressListener {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int numTilesX;
+    /**
+     * The number of completed tiles per row of tiles, guarded by this writer's monitor.
+     */
+    private final int[] numTilesDone;
+    private int numLinesDone;
+    private boolean stopped;
+
+    /**
+     * @param width    The image width
+     * @param height   The image height
+     * @param tileSize The tile size of the generator, see {@link Generator#getTileSize()}
+     */
+    public PngBandWriter(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.numTilesX = (width + tileSize - 1) / tileSize;
+        this.numTilesDone = new int[(height + tileSize - 1) / tileSize];
+    }
+
+    @Override
+    public synchronized void onStarted(int numTasks) {
+        Arrays.fill(numTilesDone, 0);
+        numLinesDone = 0;
+        stopped = false;
+    }
+
+    @Override
+    public synchronized void onSomeLinesComputed(int taskId, int line1, int line2) {
+        numTilesDone[line1 / tileSize]++;
+        final int numLinesDoneOld = numLinesDone;
+        while (numLinesDone < height && numTilesDone[numLinesDone / tileSize] == numTilesX) {
+            numLinesDone = Math.min(numLinesDone + tileSize, height);
+        }
+        if (numLinesDone > numLinesDoneOld) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void onStopped(boolean cancelled) {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes the lines of the image as they are completed by the current run, and completes the PNG image
+     * after the last line. Must be called after the run has been started.
+     *
+     * @param image  The image being computed
+     * @param writer The writer
+     * @return {@code false}, if the run stopped before the image was complete.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the current thread has been interrupted while waiting for lines.
+     */
+    public boolean write(Image image, PngWriter writer) throws IOException, InterruptedException {
+        int y = 0;
+        while (y < height) {
+            final int numLines = awaitLines(y);
+            if (numLines == y) {
+                return false;
+            }
+            writer.writeRows(image.getColours(), y * width, numLines - y);
+            y = numLines;
+        }
+        writer.finish();
+        return true;
+    }
+
+    /**
+     * Waits until more than the given number of lines are complete, or the run has stopped.
+     *
+     * @return The number of complete lines.
+     */
+    private synchronized int awaitLines(int numLines) throws InterruptedException {
+        while (numLinesDone <= numLines && !stopped) {
+            wait();
+        }
+        return numLinesDone;
+    }
+}
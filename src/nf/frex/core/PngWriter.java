@@ -0,0 +1,393 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes images as 24-bit RGB PNG files, without any platform dependency. Alpha is ignored, since all
+ * fractal colours are opaque. Rows use the "Sub" filter, which compresses smooth colour gradients well.
+ * <p/>
+ * Rows are written in order and compressed as they come, so that images need not be held in memory as a whole.
+ * <p/>
+ * If more than one thread is requested, rows are collected into blocks which are compressed concurrently,
+ * each by a deflater of its own primed with the end of the previous block. Blocks are terminated by a sync flush,
+ * so that they can simply be concatenated. Sync flushes need Java 7 or Android 4.4, on older platforms rows are
+ * compressed by the calling thread.
+ * <p/>
+ * Writers must be closed, also if writing is aborted, so that compression threads and native deflater memory are
+ * released.
+ *
+ * @author Norman Fomferra
+ */
+public final class PngWriter implements Closeable {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int FILTER_SUB = 1;
+    private static final int CHUNK_SIZE = 0x10000;
+    private static final int BLOCK_SIZE = 0x40000;
+    private static final int DICTIONARY_SIZE = 0x8000;
+    private static final int SYNC_FLUSH = 2;
+    /**
+     * {@code Deflater.deflate(byte[], int, int, int)}, or {@code null} if not available.
+     */
+    private static final Method DEFLATE_WITH_FLUSH = getDeflateWithFlush();
+
+    private final OutputStream stream;
+    private final int width;
+    private final int height;
+    private final byte[] row;
+    private int numRowsWritten;
+
+    private final Deflater deflater;
+    private final DeflaterOutputStream deflaterStream;
+
+    private final ExecutorService executor;
+    private final OutputStream chunkStream;
+    private final LinkedList<Future<byte[]>> pendingBlocks;
+    private final int maxPendingBlocks;
+    private final Adler32 adler32;
+    private byte[] block;
+    private int blockLength;
+    private byte[] previousBlock;
+
+    /**
+     * Writes the PNG header. Rows are compressed by the calling thread.
+     *
+     * @param stream The output stream, which is not closed
+     * @param width  The image width
+     * @param height The image height
+     * @throws IOException If an I/O error occurs.
+     */
+    public PngWriter(OutputStream stream, int width, int height) throws IOException {
+        this(stream, width, height, 1);
+    }
+
+    /**
+     * Writes the PNG header.
+     *
+     * @param stream     The output stream, which is not closed
+     * @param width      The image width
+     * @param height     The image height
+     * @param numThreads The number of threads used to compress rows
+     * @throws IOException If an I/O error occurs.
+     */
+    public PngWriter(OutputStream stream, int width, int height, int numThreads) throws IOException {
+        this.stream = stream;
+        this.width = width;
+        this.height = height;
+        stream.write(SIGNATURE);
+        final byte[] header = new byte[13];
+        setInt(header, 0, width);
+        setInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = 2;  // colour type RGB
+        writeChunk(stream, "IHDR", header, header.length);
+        row = new byte[1 + 3 * width];
+        if (numThreads > 1 && DEFLATE_WITH_FLUSH != null) {
+            deflater = null;
+            deflaterStream = null;
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "PngWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            chunkStream = new ChunkOutputStream(stream);
+            pendingBlocks = new LinkedList<Future<byte[]>>();
+            maxPendingBlocks = 2 * numThreads;
+            adler32 = new Adler32();
+            block = new byte[Math.max(BLOCK_SIZE / row.length, 1) * row.length];
+            // zlib header: deflate with 32K window, default compression
+            chunkStream.write(0x78);
+            chunkStream.write(0x9C);
+        } else {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            deflaterStream = new DeflaterOutputStream(new ChunkOutputStream(stream), deflater, CHUNK_SIZE);
+            executor = null;
+            chunkStream = null;
+            pendingBlocks = null;
+            maxPendingBlocks = 0;
+            adler32 = null;
+        }
+    }
+
+    /**
+     * @param image      The image
+     * @param stream     The output stream, which is not closed
+     * @param numThreads The number of threads used to compress rows
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void write(Image image, OutputStream stream, int numThreads) throws IOException {
+        final PngWriter writer = new PngWriter(stream, image.getWidth(), image.getHeight(), numThreads);
+        try {
+            writer.writeRows(image.getColours(), 0, image.getHeight());
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the next rows of the image.
+     *
+     * @param colours The pixel colours of the rows, see {@link Argb}
+     * @param offset  The index of the first pixel of the first row
+     * @param numRows The number of rows
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeRows(int[] colours, int offset, int numRows) throws IOException {
+        if (numRowsWritten + numRows > height) {
+            throw new IllegalStateException("Too many rows");
+        }
+        for (int y = 0; y < numRows; y++) {
+            filterRow(colours, offset + y * width, width, row);
+            if (executor != null) {
+                System.arraycopy(row, 0, block, blockLength, row.length);
+                blockLength += row.length;
+                final boolean last = numRowsWritten + y + 1 == height;
+                if (blockLength == block.length || last) {
+                    submitBlock(last);
+                }
+            } else {
+                deflaterStream.write(row);
+            }
+        }
+        numRowsWritten += numRows;
+    }
+
+    /**
+     * Completes the image after all rows have been written.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        if (numRowsWritten != height) {
+            throw new IllegalStateException("Missing rows");
+        }
+        if (executor != null) {
+            while (!pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+            final int checksum = (int) adler32.getValue();
+            chunkStream.write(checksum >>> 24);
+            chunkStream.write(checksum >>> 16);
+            chunkStream.write(checksum >>> 8);
+            chunkStream.write(checksum);
+            chunkStream.flush();
+        } else {
+            deflaterStream.finish();
+            deflaterStream.flush();
+        }
+        writeChunk(stream, "IEND", new byte[0], 0);
+        stream.flush();
+    }
+
+    /**
+     * Releases the compression threads and the deflater. Blocks still being compressed are discarded, so the
+     * image is incomplete unless {@link #finish()} has been called before. The output stream is not closed.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            pendingBlocks.clear();
+        } else {
+            deflater.end();
+        }
+    }
+
+    private void submitBlock(final boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dictionary = previousBlock;
+        adler32.update(data, 0, length);
+        pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return deflateBlock(data, length, dictionary, last);
+            }
+        }));
+        previousBlock = data;
+        block = new byte[data.length];
+        blockLength = 0;
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            chunkStream.write(pendingBlocks.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Compresses a block into raw deflate data, which is terminated by a sync flush unless it is the last block.
+     */
+    private static byte[] deflateBlock(byte[] data, int length, byte[] dictionary, boolean last) throws Exception {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                final int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(data, 0, length);
+            byte[] output = new byte[length / 2 + 64];
+            int outputLength = 0;
+            if (last) {
+                deflater.finish();
+            }
+            while (true) {
+                if (outputLength == output.length) {
+                    final byte[] newOutput = new byte[2 * output.length];
+                    System.arraycopy(output, 0, newOutput, 0, outputLength);
+                    output = newOutput;
+                }
+                final int space = output.length - outputLength;
+                final int n;
+                if (last) {
+                    n = deflater.deflate(output, outputLength, space);
+                } else {
+                    n = (Integer) DEFLATE_WITH_FLUSH.invoke(deflater, output, outputLength, space, SYNC_FLUSH);
+                }
+                outputLength += n;
+                if (last ? deflater.finished() : n < space) {
+                    break;
+                }
+            }
+            final byte[] result = new byte[outputLength];
+            System.arraycopy(output, 0, result, 0, outputLength);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Method getDeflateWithFlush() {
+        try {
+            return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static void filterRow(int[] colours, int offset, int width, byte[] row) {
+        row[0] = FILTER_SUB;
+        int prev = 0;
+        for (int x = 0, i = 1; x < width; x++, i += 3) {
+            final int c = colours[offset + x];
+            row[i] = (byte) ((c >> 16) - (prev >> 16));
+            row[i + 1] = (byte) ((c >> 8) - (prev >> 8));
+            row[i + 2] = (byte) (c - prev);
+            prev = c;
+        }
+    }
+
+    /**
+     * Writes a chunk by three calls of the output stream, so that it need not be buffered.
+     */
+    static void writeChunk(OutputStream stream, String type, byte[] data, int length) throws IOException {
+        final byte[] header = new byte[8];
+        setInt(header, 0, length);
+        for (int i = 0; i < 4; i++) {
+            header[4 + i] = (byte) type.charAt(i);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        final byte[] trailer = new byte[4];
+        setInt(trailer, 0, (int) crc.getValue());
+        stream.write(header);
+        stream.write(data, 0, length);
+        stream.write(trailer);
+    }
+
+    private static void setInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Packs the compressed data into IDAT chunks.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream stream;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length;
+
+        private ChunkOutputStream(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flush();
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    flush();
+                }
+                final int n = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                writeChunk(stream, "IDAT", buffer, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * The pixel values of an image quantised to 16-bit indices. Changing colours then only requires a small
+ * table which maps indices to colours, and a single lookup per pixel.
+ * <p/>
+ * Values are multiplied by a common scale factor and rounded. If the maximum value is not greater than
+ * {@link #MAX_INDEX}, the scale factor is an integer, so that integer values, e.g. iteration counts,
+ * are represented exactly.
+ *
+ * @author Norman Fomferra
+ */
+public final class QuantizedValues {
+    public static final int MAX_INDEX = 0xFFFF;
+
+    private final short[] indices;
+    private final float scale;
+    private final int maxIndex;
+
+    private QuantizedValues(short[] indices, float scale, int maxIndex) {
+        this.indices = indices;
+        this.scale = scale;
+        this.maxIndex = maxIndex;
+    }
+
+    /**
+     * @param values The pixel values
+     * @return The quantised values, or {@code null} if there are missing values.
+     */
+    public static QuantizedValues create(float[] values) {
+        float maxValue = 0.0F;
+        for (float value : values) {
+            if (value < 0.0F) {
+                return null;
+            }
+            if (value > maxValue) {
+                maxValue = value;
+            }
+        }
+        final float scale;
+        if (maxValue <= MAX_INDEX) {
+            scale = (float) Math.floor(MAX_INDEX / Math.max(maxValue, 1.0F));
+        } else {
+            scale = MAX_INDEX / maxValue;
+        }
+        final short[] indices = new short[values.length];
+        for (int i = 0; i < values.length; i++) {
+            indices[i] = (short) Math.min((int) (scale * values[i] + 0.5F), MAX_INDEX);
+        }
+        return new QuantizedValues(indices, scale, Math.min((int) (scale * maxValue + 0.5F), MAX_INDEX));
+    }
+
+    /**
+     * Creates the table which maps indices to colours.
+     *
+     * @param colorMapper The colour mapper
+     * @return The colour table, or {@code null} if the quantisation is too coarse for the colour mapper's gain,
+     *         that is if adjacent indices would map to colours more than one gradient entry apart.
+     */
+    public int[] createColorTable(ColorMapper colorMapper) {
+        if (colorMapper.getGain() > scale) {
+            return null;
+        }
+        final int[] colorTable = new int[maxIndex + 1];
+        for (int i = 0; i <= maxIndex; i++) {
+            colorTable[i] = colorMapper.getColor(i / scale);
+        }
+        return colorTable;
+    }
+
+    /**
+     * Maps a range of quantised values to colours.
+     *
+     * @param colorTable The colour table as returned by {@link #createColorTable}
+     * @param colors     The pixel colours
+     * @param start      The index of the first pixel
+     * @param end        The index after the last pixel
+     */
+    public void mapColors(int[] colorTable, int[] colors, int start, int end) {
+        final short[] indices = this.indices;
+        for (int i = start; i < end; i++) {
+            colors[i] = colorTable[indices[i] & 0xFFFF];
+        }
+    }
+}
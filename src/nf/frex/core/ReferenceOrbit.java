@@ -0,0 +1,79 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * The orbit of a single point computed with arbitrary precision, but stored with double precision.
+ * Used as reference for computing the orbits of neighbouring points by perturbation.
+ *
+ * @author Norman Fomferra
+ * @see Fractal#computeReferenceOrbit
+ * @see Fractal#computePerturbedOrbit
+ */
+public final class ReferenceOrbit {
+    private final double[] orbitX;
+    private final double[] orbitY;
+    private final int length;
+    private final double constX;
+    private final double constY;
+
+    public ReferenceOrbit(double[] orbitX, double[] orbitY, int length, double constX, double constY) {
+        this.orbitX = orbitX;
+        this.orbitY = orbitY;
+        this.length = length;
+        this.constX = constX;
+        this.constY = constY;
+    }
+
+    /**
+     * @return The orbit's X-values, starting with the initial point.
+     */
+    public double[] getOrbitX() {
+        return orbitX;
+    }
+
+    /**
+     * @return The orbit's Y-values, starting with the initial point.
+     */
+    public double[] getOrbitY() {
+        return orbitY;
+    }
+
+    /**
+     * @return The number of orbit points including the initial point, always at least 2.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The X-value of the orbit's constant, rounded to double precision.
+     */
+    public double getConstX() {
+        return constX;
+    }
+
+    /**
+     * @return The Y-value of the orbit's constant, rounded to double precision.
+     */
+    public double getConstY() {
+        return constY;
+    }
+}
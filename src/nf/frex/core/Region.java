@@ -19,13 +19,28 @@
 
 package nf.frex.core;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+
 /**
+ * A region in the complex plane, given by its center and radius.
+ * <p/>
+ * For deep zooms, the center may additionally be given with arbitrary precision, since {@code double}
+ * precision is not sufficient to address pixels once the radius becomes small.
+ *
  * @author Norman Fomferra
  */
 public class Region implements Cloneable {
+    /**
+     * Radius below which the center of a region is maintained with arbitrary precision.
+     */
+    public static final double PRECISE_RADIUS_LIMIT = 1.0E-10;
+
     private double centerX;
     private double centerY;
     private double radius;
+    private BigDecimal preciseCenterX;
+    private BigDecimal preciseCenterY;
 
     public Region(double centerX, double centerY, double radius) {
         this.centerX = centerX;
@@ -33,14 +48,52 @@ public class Region implements Cloneable {
         this.radius = radius;
     }
 
+    public Region(BigDecimal centerX, BigDecimal centerY, double radius) {
+        set(centerX, centerY, radius);
+    }
+
     public void set(double centerX, double centerY, double radius) {
         this.centerX = centerX;
         this.centerY = centerY;
         this.radius = radius;
+        this.preciseCenterX = null;
+        this.preciseCenterY = null;
+    }
+
+    public void set(BigDecimal centerX, BigDecimal centerY, double radius) {
+        this.centerX = centerX.doubleValue();
+        this.centerY = centerY.doubleValue();
+        this.radius = radius;
+        this.preciseCenterX = centerX;
+        this.preciseCenterY = centerY;
     }
 
     public void set(Region region) {
-        set(region.getCenterX(), region.getCenterY(), region.getRadius());
+        if (region.isPrecise()) {
+            set(region.preciseCenterX, region.preciseCenterY, region.getRadius());
+        } else {
+            set(region.getCenterX(), region.getCenterY(), region.getRadius());
+        }
+    }
+
+    /**
+     * Moves the center of this region by the given offsets and sets a new radius.
+     * If the new radius is below {@link #PRECISE_RADIUS_LIMIT}, the new center is computed with
+     * arbitrary precision.
+     *
+     * @param dx     The offset in X
+     * @param dy     The offset in Y
+     * @param radius The new radius
+     */
+    public void move(double dx, double dy, double radius) {
+        if (radius < PRECISE_RADIUS_LIMIT) {
+            MathContext mathContext = getMathContext(radius);
+            set(getPreciseCenterX().add(new BigDecimal(dx), mathContext),
+                getPreciseCenterY().add(new BigDecimal(dy), mathContext),
+                radius);
+        } else {
+            set(centerX + dx, centerY + dy, radius);
+        }
     }
 
     public double getCenterX() {
@@ -55,6 +108,50 @@ public class Region implements Cloneable {
         return radius;
     }
 
+    /**
+     * @return {@code true}, if the center is maintained with arbitrary precision.
+     */
+    public boolean isPrecise() {
+        return preciseCenterX != null;
+    }
+
+    public BigDecimal getPreciseCenterX() {
+        return preciseCenterX != null ? preciseCenterX : new BigDecimal(centerX);
+    }
+
+    public BigDecimal getPreciseCenterY() {
+        return preciseCenterY != null ? preciseCenterY : new BigDecimal(centerY);
+    }
+
+    /**
+     * @param region Another region
+     * @return The X-offset of the other region's center from this region's center, computed with full precision.
+     */
+    public double getCenterOffsetX(Region region) {
+        if (isPrecise() || region.isPrecise()) {
+            return region.getPreciseCenterX().subtract(getPreciseCenterX()).doubleValue();
+        }
+        return region.centerX - centerX;
+    }
+
+    /**
+     * @param region Another region
+     * @return The Y-offset of the other region's center from this region's center, computed with full precision.
+     */
+    public double getCenterOffsetY(Region region) {
+        if (isPrecise() || region.isPrecise()) {
+            return region.getPreciseCenterY().subtract(getPreciseCenterY()).doubleValue();
+        }
+        return region.centerY - centerY;
+    }
+
+    /**
+     * @return A math context whose precision is sufficient to address the pixels of a region with the given radius.
+     */
+    public static MathContext getMathContext(double radius) {
+        return new MathContext(Math.max(20, 20 - (int) Math.floor(Math.log10(radius))));
+    }
+
     public double getPixelSize(int width, int height) {
         return getPixelSize(radius, width, height);
     }
@@ -0,0 +1,86 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+/**
+ * Approximates the difference {@code d} of a perturbed orbit to its reference orbit after a number of
+ * skipped iterations by a cubic polynomial in the difference {@code dc} of the constants:
+ * <pre>
+ *    d = A dc + B dc^2 + C dc^3
+ * </pre>
+ * where {@code A}, {@code B}, {@code C} and {@code dc} are complex numbers.
+ *
+ * @author Norman Fomferra
+ * @see Fractal#computeSeriesApproximation
+ */
+public final class SeriesApproximation {
+    private final int skippedIterations;
+    private final double ax;
+    private final double ay;
+    private final double bx;
+    private final double by;
+    private final double cx;
+    private final double cy;
+
+    public SeriesApproximation(int skippedIterations,
+                               double ax, double ay,
+                               double bx, double by,
+                               double cx, double cy) {
+        this.skippedIterations = skippedIterations;
+        this.ax = ax;
+        this.ay = ay;
+        this.bx = bx;
+        this.by = by;
+        this.cx = cx;
+        this.cy = cy;
+    }
+
+    /**
+     * @return The number of iterations which can be skipped, may be zero.
+     */
+    public int getSkippedIterations() {
+        return skippedIterations;
+    }
+
+    /**
+     * @return The X-value of the difference to the reference orbit after the skipped iterations.
+     */
+    public double getDeltaX(double deltaConstX, double deltaConstY) {
+        // Horner scheme: ((C dc + B) dc + A) dc
+        double x = cx * deltaConstX - cy * deltaConstY + bx;
+        double y = cx * deltaConstY + cy * deltaConstX + by;
+        final double t = x * deltaConstX - y * deltaConstY + ax;
+        y = x * deltaConstY + y * deltaConstX + ay;
+        x = t;
+        return x * deltaConstX - y * deltaConstY;
+    }
+
+    /**
+     * @return The Y-value of the difference to the reference orbit after the skipped iterations.
+     */
+    public double getDeltaY(double deltaConstX, double deltaConstY) {
+        double x = cx * deltaConstX - cy * deltaConstY + bx;
+        double y = cx * deltaConstY + cy * deltaConstX + by;
+        final double t = x * deltaConstX - y * deltaConstY + ax;
+        y = x * deltaConstY + y * deltaConstX + ay;
+        x = t;
+        return x * deltaConstY + y * deltaConstX;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Renders images of any size within a bounded amount of memory. The image is computed tile by tile, see
+ * {@link Generator#startTile}. The pixel values of finished tiles are stored in a raster file, from which the
+ * image is assembled band by band.
+ * <p/>
+ * Colours are mapped while assembling. Usually each row of tiles is assembled and written by a separate thread
+ * while the next one is computed. In histogram mode, the image is assembled after all tiles have been computed,
+ * so that histogram equalisation uses the histogram of the whole image. It is accumulated from the raster file
+ * before, when the range of the values is known.
+ * Besides the raster file of 4 bytes per pixel, about {@code 8 * tileSize^2} bytes are needed for the tile
+ * and the same amount for the band.
+ *
+ * @author Norman Fomferra
+ */
+public class TiledRenderer {
+    private final GeneratorConfig config;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int numTasks;
+
+    /**
+     * @param config   The generator configuration
+     * @param width    The image width
+     * @param height   The image height
+     * @param tileSize The tile width and height, rounded up to a multiple of the generator's tile size, so that
+     *                 the image equals one computed as a whole
+     * @param numTasks The number of tasks used to compute a tile
+     */
+    public TiledRenderer(GeneratorConfig config, int width, int height, int tileSize, int numTasks) {
+        this.config = config;
+        this.width = width;
+        this.height = height;
+        this.tileSize = (tileSize + Generator.DEFAULT_TILE_SIZE - 1) / Generator.DEFAULT_TILE_SIZE * Generator.DEFAULT_TILE_SIZE;
+        this.numTasks = numTasks;
+    }
+
+    /**
+     * Computes the image and writes it as PNG.
+     *
+     * @param rasterFile The file used to store pixel values, it can be deleted afterwards
+     * @param stream     The PNG output stream, which is not closed
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the computation was interrupted.
+     */
+    public void render(File rasterFile, OutputStream stream) throws IOException, InterruptedException {
+        final RandomAccessFile file = new RandomAccessFile(rasterFile, "rw");
+        try {
+            file.setLength(4L * width * height);
+            final FileChannel channel = file.getChannel();
+            final PngWriter writer = new PngWriter(stream, width, height, numTasks);
+            try {
+                if (config.isColorHistogram()) {
+                    final Histogram histogram = computeTiles(channel, null);
+                    accumulateHistogram(channel, histogram);
+                    new BandWriter(channel, histogram, writer).writeRows(0, height);
+                } else {
+                    computeTiles(channel, new BandWriter(channel, null, writer));
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @param bandWriter If not {@code null}, used to write each row of tiles by a separate thread as soon as it
+     *                   has been computed
+     * @return An empty histogram covering the range of the computed values.
+     */
+    private Histogram computeTiles(FileChannel channel, final BandWriter bandWriter)
+            throws IOException, InterruptedException {
+        final Semaphore stopped = new Semaphore(0);
+        final Generator generator = new Generator(config, numTasks, new Generator.ProgressListener() {
+            @Override
+            public void onStarted(int numTasks) {
+            }
+
+            @Override
+            public void onSomeLinesComputed(int taskId, int line1, int line2) {
+            }
+
+            @Override
+            public void onStopped(boolean cancelled) {
+                stopped.release();
+            }
+        });
+        float minSample = Float.POSITIVE_INFINITY;
+        float maxSample = 0.0F;
+        final Image image = new Image(Math.min(tileSize, width), Math.min(tileSize, height));
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4 * tileSize).order(ByteOrder.nativeOrder());
+        final ExecutorService executor = bandWriter != null ? Executors.newSingleThreadExecutor() : null;
+        final List<Future<Void>> bands = new ArrayList<Future<Void>>();
+        try {
+            for (int ty = 0; ty < height; ty += tileSize) {
+                final int th = Math.min(tileSize, height - ty);
+                for (int tx = 0; tx < width; tx += tileSize) {
+                    final int tw = Math.min(tileSize, width - tx);
+                    if (image.getWidth() != tw || image.getHeight() != th) {
+                        image.resize(tw, th);
+                    }
+                    Arrays.fill(image.getValues(), Image.MISSING_VALUE);
+                    generator.startTile(image, tx, ty, width, height);
+                    stopped.acquire();
+                    final float[] values = image.getValues();
+                    for (int y = 0; y < th; y++) {
+                        buffer.clear();
+                        buffer.asFloatBuffer().put(values, y * tw, tw);
+                        buffer.limit(4 * tw);
+                        writeFully(channel, buffer, 4L * ((long) (ty + y) * width + tx));
+                    }
+                    for (float value : values) {
+                        if (value > 0.0F) {
+                            minSample = Math.min(minSample, value);
+                            maxSample = Math.max(maxSample, value);
+                        }
+                    }
+                }
+                if (executor != null) {
+                    final int y0 = ty;
+                    // Bands are written in order, since the executor has a single thread
+                    bands.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            bandWriter.writeRows(y0, th);
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<Void> band : bands) {
+                try {
+                    band.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            generator.shutdown();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return new Histogram(config.getIterMax(), Math.min(minSample, maxSample), maxSample);
+    }
+
+    private void accumulateHistogram(FileChannel channel, Histogram histogram) throws IOException {
+        final int bandHeight = getBandHeight();
+        final float[] values = new float[bandHeight * width];
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4 * width).order(ByteOrder.nativeOrder());
+        for (int by = 0; by < height; by += bandHeight) {
+            final int bh = Math.min(bandHeight, height - by);
+            readRows(channel, buffer, values, by, bh);
+            histogram.accumulate(values, 0, bh * width);
+        }
+    }
+
+    private int getBandHeight() {
+        return Math.max(1, Math.min(height, tileSize * tileSize / width));
+    }
+
+    private void readRows(FileChannel channel, ByteBuffer buffer, float[] values, int y0, int numRows) throws IOException {
+        for (int y = 0; y < numRows; y++) {
+            buffer.clear();
+            readFully(channel, buffer, 4L * (y0 + y) * width);
+            buffer.flip();
+            buffer.asFloatBuffer().get(values, y * width, width);
+        }
+    }
+
+    /**
+     * Assembles rows from the raster file, maps them to colours and writes them.
+     */
+    private class BandWriter {
+        private final FileChannel channel;
+        private final ColorMapper colorMapper;
+        private final PngWriter writer;
+        private final int bandHeight;
+        private final float[] values;
+        private final int[] colours;
+        private final ByteBuffer buffer;
+
+        private BandWriter(FileChannel channel, Histogram histogram, PngWriter writer) {
+            this.channel = channel;
+            this.colorMapper = new ColorMapper(config, histogram);
+            this.writer = writer;
+            this.bandHeight = getBandHeight();
+            this.values = new float[bandHeight * width];
+            this.colours = new int[bandHeight * width];
+            this.buffer = ByteBuffer.allocateDirect(4 * width).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Writes the next rows of the image, which must have been stored in the raster file.
+         */
+        private void writeRows(int y0, int numRows) throws IOException {
+            for (int by = y0; by < y0 + numRows; by += bandHeight) {
+                final int bh = Math.min(bandHeight, y0 + numRows - by);
+                readRows(channel, buffer, values, by, bh);
+                colorMapper.mapColors(values, colours, 0, bh * width);
+                writer.writeRows(colours, 0, bh);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+}
@@ -22,57 +22,78 @@ package nf.frex.core;
 import java.util.Random;
 
 /**
- * Computes turbulence.
+ * Computes turbulence. The turbulence is the weighted sum of a number of octaves of value noise, each octave
+ * having twice the frequency and half the weight of the previous one.
+ * <p/>
+ * The noise is interpolated bilinearly from a table of random values with a power-of-two size, which is
+ * stored in a flat array, so that coordinates wrap around by masking.
  *
  * @author Norman Fomferra
  */
 public class Turbulence {
 
+    private static final int SIZE_BITS = 8;
+    private static final int SIZE = 1 << SIZE_BITS;
+    private static final int MASK = SIZE - 1;
+    private static final float[] NOISE = new float[SIZE * SIZE];
+
+    static {
+        final Random random = new Random(0);
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++) {
+                NOISE[(i << SIZE_BITS) | j] = random.nextFloat();
+            }
+        }
+    }
+
+    /**
+     * Computes all octaves of the turbulence at a given point.
+     *
+     * @param x          The X-coordinate of the point
+     * @param y          The Y-coordinate of the point
+     * @param scale      The wavelength of the first octave
+     * @param numOctaves The number of octaves
+     * @return The turbulence, a value between 0 and 1.
+     */
     public static double computeTurbulence(double x, double y, double scale, int numOctaves) {
-        double t = 0;
-        double s = 0;
+        // Coordinates of subsequent octaves are doubled, which is exact
+        double u = x / scale;
+        double v = y / scale;
+        double weight = 1.0;
+        double t = 0.0;
+        double s = 0.0;
         for (int i = 0; i < numOctaves; i++) {
-            t += computeNoise(x / scale, y / scale) * scale;
-            s += scale;
-            scale /= 2;
+            t += computeNoise(u, v) * weight;
+            s += weight;
+            u *= 2.0;
+            v *= 2.0;
+            weight *= 0.5;
         }
         return t / s;
     }
 
     public static double computeNoise(double u, double v) {
-
-        int iu = (int) Math.floor(u);
-        int iv = (int) Math.floor(v);
-        float du = (float)(u - iu);
-        float dv = (float)(v - iv);
-
-        iu = iu % size;
-        if (iu < 0) {
-            iu += size;
+        int iu = (int) u;
+        if (u < iu) {
+            iu--;
         }
-        iv = iv % size;
-        if (iv < 0) {
-            iv += size;
+        int iv = (int) v;
+        if (v < iv) {
+            iv--;
         }
-        int ip = (iu + 1) % size;
-        int iq = (iv + 1) % size;
+        final float du = (float) (u - iu);
+        final float dv = (float) (v - iv);
 
-        float bot = noise[iu][iv] + du * (noise[ip][iv] - noise[iu][iv]);
-        float top = noise[iu][iq] + du * (noise[ip][iq] - noise[iu][iq]);
+        final int i0 = (iu & MASK) << SIZE_BITS;
+        final int i1 = ((iu + 1) & MASK) << SIZE_BITS;
+        final int j0 = iv & MASK;
+        final int j1 = (iv + 1) & MASK;
 
-        return bot + dv * (top - bot);
-    }
-
-    private static final int size = 256;
-    private static final float[][] noise = new float[size][size];
+        final float n00 = NOISE[i0 | j0];
+        final float n01 = NOISE[i0 | j1];
+        final float bot = n00 + du * (NOISE[i1 | j0] - n00);
+        final float top = n01 + du * (NOISE[i1 | j1] - n01);
 
-    static {
-        final Random random = new Random(0);
-        for (int j = 0; j < size; j++) {
-            for (int i = 0; i < size; i++) {
-                noise[i][j] = random.nextFloat();
-            }
-        }
+        return bot + dv * (top - bot);
     }
-
 }
@@ -0,0 +1,234 @@
+/*
+ * Frex - a fractal image generator for Android mobile devices
+ *
+ * Copyright (C) 2013 by Norman Fomferra
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nf.frex.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+/**
+ * Stores the computed pixel values of an image, so that a saved fractal can be reopened or recoloured
+ * without computing it again. The file holds a small header followed by the values as little-endian floats:
+ * <pre>
+ *     magic "FREXVALS", version, width, height, region center X, center Y and radius, config hash
+ * </pre>
+ * The config hash covers all parameters which affect pixel values, but not the colours. This includes the
+ * performance settings which approximate values, e.g. rectangle checking, although they are not saved with
+ * the parameters. Values are only read back if the hash matches the current configuration.
+ *
+ * @author Norman Fomferra
+ */
+public final class ValueRaster {
+    private static final byte[] MAGIC = {'F', 'R', 'E', 'X', 'V', 'A', 'L', 'S'};
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = MAGIC.length + 3 * 4 + 3 * 8 + 8;
+    private static final int BUFFER_SIZE = 0x10000;
+
+    private ValueRaster() {
+    }
+
+    /**
+     * Writes the values of a complete image.
+     *
+     * @param file   The file
+     * @param image  The image, all values must have been computed
+     * @param config The configuration the image has been computed with
+     * @throws IOException If an I/O error occurs, or if the configuration would not match itself after it has been
+     *                     saved and restored, so that the values could never be read back.
+     */
+    public static void write(File file, Image image, GeneratorConfig config) throws IOException {
+        if (getConfigHash(config) != getConfigHash(getRestoredConfig(config))) {
+            throw new IOException("Configuration hash changes when saved and restored");
+        }
+        final float[] values = image.getValues();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final Region region = config.getRegion();
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(image.getWidth());
+        buffer.putInt(image.getHeight());
+        buffer.putDouble(region.getCenterX());
+        buffer.putDouble(region.getCenterY());
+        buffer.putDouble(region.getRadius());
+        buffer.putLong(getConfigHash(config));
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+            int i = 0;
+            while (true) {
+                final int n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, i, n);
+                buffer.position(buffer.position() + 4 * n);
+                i += n;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                if (i == values.length) {
+                    break;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the values of an image, if they have been computed with the given configuration and image size.
+     * Use {@link Generator#setValues} to put them into an image.
+     *
+     * @param file   The file
+     * @param width  The image width
+     * @param height The image height
+     * @param config The current configuration
+     * @return The values, or {@code null} if the file does not match the configuration or image size.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static float[] read(File file, int width, int height, GeneratorConfig config) throws IOException {
+        return read(file, width, height, getConfigHash(config));
+    }
+
+    /**
+     * Reads the values of an image, if they have been computed with a configuration of the given hash and the
+     * given image size.
+     *
+     * @param file       The file
+     * @param width      The image width
+     * @param height     The image height
+     * @param configHash The hash of the current configuration, see {@link #getConfigHash}
+     * @return The values, or {@code null} if the file does not match the configuration or image size.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static float[] read(File file, int width, int height, long configHash) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() != HEADER_SIZE + 4L * width * height) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    return null;
+                }
+            }
+            if (buffer.getInt() != VERSION
+                    || buffer.getInt() != width
+                    || buffer.getInt() != height) {
+                return null;
+            }
+            // Region center and radius are informational, they are covered by the hash
+            buffer.position(buffer.position() + 3 * 8);
+            if (buffer.getLong() != configHash) {
+                return null;
+            }
+            final float[] values = new float[width * height];
+            buffer.asFloatBuffer().get(values);
+            return values;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param config The configuration
+     * @return A hash of all parameters affecting pixel values. Parameters which only have an effect in certain
+     *         modes, e.g. the Julia constant, are only included in these modes.
+     */
+    public static long getConfigHash(GeneratorConfig config) {
+        final Region region = config.getRegion();
+        long hash = 1125899906842597L;
+        hash = hash(hash, config.getFractalId());
+        if ("FORMULA".equals(config.getFractalId()) && config.getFractalFormula() != null) {
+            hash = hash(hash, config.getFractalFormula());
+        }
+        hash = hash(hash, config.getIterMax());
+        hash = hash(hash, config.getBailOut());
+        hash = hash(hash, config.isSmoothIterations());
+        hash = hash(hash, region.getPreciseCenterX().toString());
+        hash = hash(hash, region.getPreciseCenterY().toString());
+        hash = hash(hash, region.getRadius());
+        hash = hash(hash, config.isJuliaModeFractal());
+        if (config.isJuliaModeFractal()) {
+            hash = hash(hash, config.getJuliaX());
+            hash = hash(hash, config.getJuliaY());
+        }
+        hash = hash(hash, config.isDecoratedFractal());
+        if (!config.isDecoratedFractal()) {
+            // These are not used for decorations, see Generator
+            hash = hash(hash, config.isRectangleChecking());
+            hash = hash(hash, config.isPeriodicityChecking());
+            hash = hash(hash, config.isSeriesApproximation());
+        } else {
+            hash = hash(hash, config.getDistanceFunctionId());
+            hash = hash(hash, config.getDistanceDilation());
+            hash = hash(hash, config.getDistanceTranslateX());
+            hash = hash(hash, config.getDistanceTranslateY());
+            hash = hash(hash, config.isTurbulenceEnabled());
+            if (config.isTurbulenceEnabled()) {
+                hash = hash(hash, config.getTurbulenceIntensity());
+                hash = hash(hash, config.getTurbulenceScale());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return A copy of the configuration, saved and restored as when a fractal is reopened.
+     */
+    private static GeneratorConfig getRestoredConfig(GeneratorConfig config) {
+        final Properties properties = new Properties();
+        config.saveInstanceState(new DefaultPropertySet(properties));
+        final GeneratorConfig restoredConfig = new GeneratorConfig();
+        restoredConfig.setDefaults();
+        // Performance settings are not saved, a fractal is reopened with the current ones
+        restoredConfig.setRectangleChecking(config.isRectangleChecking());
+        restoredConfig.setPeriodicityChecking(config.isPeriodicityChecking());
+        restoredConfig.setSeriesApproximation(config.isSeriesApproximation());
+        restoredConfig.restoreInstanceState(new DefaultPropertySet(properties));
+        return restoredConfig;
+    }
+
+    private static long hash(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return 31 * hash;
+    }
+
+    private static long hash(long hash, double value) {
+        return 31 * hash + Double.doubleToLongBits(value);
+    }
+
+    private static long hash(long hash, boolean value) {
+        return 31 * hash + (value ? 1231 : 1237);
+    }
+}